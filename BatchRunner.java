@@ -0,0 +1,237 @@
+package org.cis120.twentyfortyeight;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.cis120.twentyfortyeight.ai.Strategies;
+import org.cis120.twentyfortyeight.ai.Strategy;
+
+/**
+ * Plays many complete games without any Swing objects and prints aggregated statistics.
+ *
+ * Games are played on packed boards (see BitBoard) with the same opening and spawn odds as
+ * TwentyFortyEight. Game number i is always seeded from the run seed and i, and each game stays on
+ * one thread, so the statistics of a run do not depend on the number of threads.
+ *
+ * Usage: BatchRunner [--games N] [--threads T] [--seed S] [--strategy NAME] [--leaderboard FILE]
+ * where NAME is one of the names understood by Strategies.byName(). With a leaderboard file, every
+ * game is recorded there by the thread that played it.
+ */
+public class BatchRunner {
+
+    private final int games;
+    private final int threads;
+    private final long seed;
+    private final Supplier<Strategy> strategy;
+    private Leaderboard leaderboard;
+
+    private final int[] scores;
+    private final int[] moves;
+    private final long[] maxTiles = new long[BitBoard.MAX_EXPONENT + 1];
+    private long elapsedNanos;
+
+    /**
+     * Sets up a batch run.
+     * @param games number of games to play
+     * @param threads number of threads to play them on
+     * @param seed seed of the whole run
+     * @param strategy makes one strategy per thread
+     */
+    public BatchRunner(int games, int threads, long seed, Supplier<Strategy> strategy) {
+        if (games < 1 || threads < 1) {
+            throw new IllegalArgumentException("Need at least one game and one thread");
+        }
+        this.games = games;
+        this.threads = threads;
+        this.seed = seed;
+        this.strategy = strategy;
+        scores = new int[games];
+        moves = new int[games];
+    }
+
+    /**
+     * Records every game played from now on to a leaderboard.
+     * @param leaderboard leaderboard to record to, or null to stop recording
+     */
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
+    /**
+     * Plays all games and blocks until they are done.
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void run() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            Future<?>[] workers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                workers[t] = executor.submit(() -> playGames(first));
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("A game failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        Arrays.sort(scores);
+        Arrays.sort(moves);
+    }
+
+    /**
+     * Plays every threads-th game starting at the given one. Each game writes only its own
+     * slots, and tile counts are merged once at the end.
+     */
+    private void playGames(int first) {
+        Strategy player = strategy.get();
+        long[] localMaxTiles = new long[maxTiles.length];
+        for (int g = first; g < games; g += threads) {
+            SplittableRandom rng = new SplittableRandom(seed + g * 0x9E3779B97F4A7C15L);
+            long board = BitBoard.spawn(BitBoard.spawn(0, rng), rng);
+            int score = 0;
+            int count = 0;
+            player.newGame();
+            while (true) {
+                Direction direction = player.chooseMove(board, rng);
+                if (direction == null) {
+                    break;
+                }
+                long next = BitBoard.move(board, direction);
+                if (next == board) {
+                    break;
+                }
+                score += BitBoard.score(board, direction);
+                board = BitBoard.spawn(next, rng);
+                count++;
+            }
+            scores[g] = score;
+            moves[g] = count;
+            localMaxTiles[BitBoard.maxExponent(board)]++;
+            if (leaderboard != null) {
+                leaderboard.record(score, count, BitBoard.maxExponent(board), BitBoard.SIZE);
+            }
+        }
+        synchronized (maxTiles) {
+            for (int e = 0; e < maxTiles.length; e++) {
+                maxTiles[e] += localMaxTiles[e];
+            }
+        }
+    }
+
+    /**
+     * Getter for a score percentile, only valid after run()
+     * @param p percentile from 0 to 100
+     * @return score of the game at that percentile
+     */
+    public int scorePercentile(double p) {
+        return percentile(scores, p);
+    }
+
+    /**
+     * Getter for a percentile of the number of moves per game, only valid after run()
+     * @param p percentile from 0 to 100
+     * @return moves made in the game at that percentile
+     */
+    public int movesPercentile(double p) {
+        return percentile(moves, p);
+    }
+
+    private static int percentile(int[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Getter for the number of games that ended with a given highest tile
+     * @param value tile value, a power of two
+     * @return number of games
+     */
+    public long gamesWithMaxTile(int value) {
+        return maxTiles[BitBoard.toExponent(value)];
+    }
+
+    /**
+     * Throughput of the run
+     * @return complete games per second
+     */
+    public double gamesPerSecond() {
+        return elapsedNanos == 0 ? 0 : games * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Prints the aggregated statistics of the run.
+     */
+    public void printStats() {
+        long totalMoves = 0;
+        long totalScore = 0;
+        for (int g = 0; g < games; g++) {
+            totalMoves += moves[g];
+            totalScore += scores[g];
+        }
+        System.out.println("Games: " + games + " on " + threads + " threads in "
+                + String.format("%.2f s", elapsedNanos / 1e9));
+        System.out.println(String.format("Games per second: %.1f, moves per second: %.0f",
+                gamesPerSecond(), totalMoves * 1e9 / elapsedNanos));
+        System.out.println(String.format("Score: mean %.1f, p10 %d, p50 %d, p90 %d, p99 %d, max %d",
+                (double) totalScore / games, scorePercentile(10), scorePercentile(50),
+                scorePercentile(90), scorePercentile(99), scorePercentile(100)));
+        System.out.println(String.format("Moves per game: mean %.1f, p50 %d, p99 %d, max %d",
+                (double) totalMoves / games, movesPercentile(50), movesPercentile(99),
+                movesPercentile(100)));
+        System.out.println("Highest tile:");
+        for (int e = 1; e < maxTiles.length; e++) {
+            if (maxTiles[e] > 0) {
+                System.out.println(String.format("  %6d: %6.2f%% (%d)", 1 << e,
+                        100.0 * maxTiles[e] / games, maxTiles[e]));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int games = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 0;
+        String strategy = "random";
+        String leaderboardFile = null;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--games": games = Integer.parseInt(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--strategy": strategy = args[i + 1]; break;
+                case "--leaderboard": leaderboardFile = args[i + 1]; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        BatchRunner runner = new BatchRunner(games, threads, seed, Strategies.byName(strategy));
+        if (leaderboardFile == null) {
+            runner.run();
+            runner.printStats();
+            return;
+        }
+        try (Leaderboard leaderboard = Leaderboard.open(Paths.get(leaderboardFile))) {
+            runner.setLeaderboard(leaderboard);
+            runner.run();
+            runner.printStats();
+            System.out.println("Leaderboard: " + leaderboard.getGameCount() + " games, best "
+                    + leaderboard.bestScore() + ", top " + leaderboard.top(5));
+        }
+    }
+}
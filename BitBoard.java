@@ -0,0 +1,511 @@
+package org.cis120.twentyfortyeight;
+
+import java.util.SplittableRandom;
+
+/**
+ * A 4x4 board packed into a single long.
+ *
+ * Each of the 16 cells takes 4 bits holding the log2 exponent of its value: 0 for an empty cell,
+ * 1 for a 2, 2 for a 4, and so on up to 15 for a 32768. Cell (row, col) lives in bits
+ * 4 * (4 * row + col), so row r is the 16-bit chunk starting at bit 16 * r and the leftmost cell
+ * of a row is its lowest nibble.
+ *
+ * Every method here is a pure function of its arguments. A board is just a long, so copying,
+ * comparing and storing boards costs nothing. Two 32768 tiles never merge since the result would
+ * not fit in a nibble.
+ *
+ * Moves are table driven. There are only 65536 possible rows, so the result and the score of
+ * shifting every one of them is computed once when the class is loaded. A move is then four
+ * table lookups, one per row or column.
+ */
+public final class BitBoard {
+
+    public static final int SIZE = 4;
+    public static final int MAX_EXPONENT = 15;
+
+    private static final long ROW_MASK = 0xFFFFL;
+    private static final long LOW_NIBBLE_BITS = 0x1111111111111111L;
+    private static final long COLUMN_MASK = 0x000F000F000F000FL;
+    // Cells that have a neighbour to their right / below them
+    private static final long HAS_RIGHT = 0x0111011101110111L;
+    private static final long HAS_BELOW = 0x0000111111111111L;
+    private static final int ROWS = 1 << 16;
+
+    // Row after a shift to the left / right, indexed by the 16-bit row before it
+    private static final char[] ROW_LEFT = new char[ROWS];
+    private static final char[] ROW_RIGHT = new char[ROWS];
+    // Column after a shift up / down, indexed by the column read as a row (top cell lowest) and
+    // already spread out so that it only needs to be shifted into its column
+    private static final long[] COL_UP = new long[ROWS];
+    private static final long[] COL_DOWN = new long[ROWS];
+    // Points earned by shifting a row to the left / right
+    private static final int[] SCORE_LEFT = new int[ROWS];
+    private static final int[] SCORE_RIGHT = new int[ROWS];
+    // Largest exponent in a row
+    private static final byte[] ROW_MAX = new byte[ROWS];
+    // Bit 0 is set when shifting the row to the left changes it, bit 1 when shifting it right does
+    private static final byte[] ROW_MOVES = new byte[ROWS];
+
+    static {
+        for (int row = 0; row < ROWS; row++) {
+            int reversed = reverseRow(row);
+            int left = slideRowLeft(row);
+            int right = reverseRow(slideRowLeft(reversed));
+            ROW_LEFT[row] = (char) left;
+            ROW_RIGHT[row] = (char) right;
+            COL_UP[row] = unpackColumn(left);
+            COL_DOWN[row] = unpackColumn(right);
+            SCORE_LEFT[row] = scoreRowLeft(row);
+            SCORE_RIGHT[row] = scoreRowLeft(reversed);
+            int max = 0;
+            for (int j = 0; j < SIZE; j++) {
+                max = Math.max(max, (row >>> (j << 2)) & 0xF);
+            }
+            ROW_MAX[row] = (byte) max;
+            ROW_MOVES[row] = (byte) ((left != row ? 1 : 0) | (right != row ? 2 : 0));
+        }
+    }
+
+    private BitBoard() {
+    }
+
+    /**
+     * Spreads a 16-bit row out into column 0 of a board, first cell on top.
+     */
+    private static long unpackColumn(int row) {
+        long column = row;
+        return (column | (column << 12) | (column << 24) | (column << 36)) & COLUMN_MASK;
+    }
+
+    /**
+     * Getter for the exponent stored in one cell.
+     * @param board packed board
+     * @param row row of the cell, from 0 (top) to 3 (bottom)
+     * @param col column of the cell, from 0 (left) to 3 (right)
+     * @return log2 of the tile value, or 0 if the cell is empty
+     */
+    public static int getExponent(long board, int row, int col) {
+        return (int) (board >>> (((row << 2) + col) << 2)) & 0xF;
+    }
+
+    /**
+     * Returns a copy of the board with one cell replaced.
+     * @param board packed board
+     * @param row row of the cell
+     * @param col column of the cell
+     * @param exponent new exponent of the cell, 0 to clear it
+     * @return the updated board
+     */
+    public static long setExponent(long board, int row, int col, int exponent) {
+        int shift = ((row << 2) + col) << 2;
+        return (board & ~(0xFL << shift)) | ((long) exponent << shift);
+    }
+
+    /**
+     * Getter for the tile value stored in one cell.
+     * @return value of the tile, or 0 if the cell is empty
+     */
+    public static int getValue(long board, int row, int col) {
+        return toValue(getExponent(board, row, col));
+    }
+
+    /**
+     * Converts an exponent into the tile value it stands for.
+     * @param exponent log2 of the value, 0 for an empty cell
+     * @return the tile value
+     */
+    public static int toValue(int exponent) {
+        return exponent == 0 ? 0 : 1 << exponent;
+    }
+
+    /**
+     * Converts a tile value into its exponent.
+     * @param value 0 or a power of two from 2 to 32768
+     * @return log2 of the value, or 0 for an empty cell
+     * @throws IllegalArgumentException if the value cannot be stored in a cell
+     */
+    public static int toExponent(int value) {
+        if (value == 0) {
+            return 0;
+        }
+        int exponent = Integer.numberOfTrailingZeros(value);
+        if (value < 0 || Integer.bitCount(value) != 1 || exponent == 0
+                || exponent > MAX_EXPONENT) {
+            throw new IllegalArgumentException("Not a valid tile value: " + value);
+        }
+        return exponent;
+    }
+
+    /**
+     * Packs a 4x4 array of tiles.
+     * @param tiles the board as Tile[][]
+     * @return the packed board
+     */
+    public static long fromTiles(Tile[][] tiles) {
+        long board = 0;
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                board = setExponent(board, i, j, toExponent(tiles[i][j].getValue()));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Packs a 4x4 array of tile values.
+     * @param values the board as int[][]
+     * @return the packed board
+     */
+    public static long fromValues(int[][] values) {
+        long board = 0;
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                board = setExponent(board, i, j, toExponent(values[i][j]));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Unpacks a board into a fresh 4x4 array of tile values.
+     * @param board packed board
+     * @return int[][] storing the values on the board
+     */
+    public static int[][] toValues(long board) {
+        int[][] values = new int[SIZE][SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                values[i][j] = getValue(board, i, j);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Writes the values of a packed board into existing tiles, so no new Tile is created.
+     * @param board packed board
+     * @param tiles 4x4 array of tiles to update
+     */
+    public static void copyInto(long board, Tile[][] tiles) {
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                tiles[i][j].setExponent(getExponent(board, i, j));
+            }
+        }
+    }
+
+    /**
+     * Getter for one row of the board.
+     * @return the 16-bit row, leftmost cell in the lowest nibble
+     */
+    public static int getRow(long board, int row) {
+        return (int) ((board >>> (row << 4)) & ROW_MASK);
+    }
+
+    /**
+     * Swaps rows and columns, so that cell (r, c) ends up at (c, r).
+     * @param board packed board
+     * @return the transposed board
+     */
+    public static long transpose(long board) {
+        long a1 = board & 0xF0F00F0FF0F00F0FL;
+        long a2 = board & 0x0000F0F00000F0F0L;
+        long a3 = board & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    /**
+     * Mirrors a 16-bit row, so the leftmost cell becomes the rightmost.
+     */
+    public static int reverseRow(int row) {
+        return ((row >>> 12) & 0xF) | ((row >>> 4) & 0xF0) | ((row << 4) & 0xF00)
+                | ((row << 12) & 0xF000);
+    }
+
+    /**
+     * Shifts a single row to the left: tiles slide over empty cells and each pair of equal
+     * neighbours merges once, starting from the left.
+     * @param row 16-bit row
+     * @return the row after the move
+     */
+    public static int slideRowLeft(int row) {
+        int result = 0;
+        int position = 0;
+        int pending = 0;
+        for (int j = 0; j < SIZE; j++) {
+            int exponent = (row >>> (j << 2)) & 0xF;
+            if (exponent == 0) {
+                continue;
+            }
+            if (exponent == pending && exponent < MAX_EXPONENT) {
+                result |= (exponent + 1) << (position << 2);
+                position++;
+                pending = 0;
+            } else {
+                if (pending != 0) {
+                    result |= pending << (position << 2);
+                    position++;
+                }
+                pending = exponent;
+            }
+        }
+        if (pending != 0) {
+            result |= pending << (position << 2);
+        }
+        return result;
+    }
+
+    /**
+     * Score gained by shifting a single row to the left, which is the sum of all merged tiles.
+     * @param row 16-bit row
+     * @return points earned by the move
+     */
+    public static int scoreRowLeft(int row) {
+        int score = 0;
+        int pending = 0;
+        for (int j = 0; j < SIZE; j++) {
+            int exponent = (row >>> (j << 2)) & 0xF;
+            if (exponent == 0) {
+                continue;
+            }
+            if (exponent == pending && exponent < MAX_EXPONENT) {
+                score += 1 << (exponent + 1);
+                pending = 0;
+            } else {
+                pending = exponent;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Shifts every row of the board to the left.
+     */
+    public static long moveLeft(long board) {
+        return (long) ROW_LEFT[(int) (board & ROW_MASK)]
+                | (long) ROW_LEFT[(int) ((board >>> 16) & ROW_MASK)] << 16
+                | (long) ROW_LEFT[(int) ((board >>> 32) & ROW_MASK)] << 32
+                | (long) ROW_LEFT[(int) (board >>> 48)] << 48;
+    }
+
+    /**
+     * Shifts every row of the board to the right.
+     */
+    public static long moveRight(long board) {
+        return (long) ROW_RIGHT[(int) (board & ROW_MASK)]
+                | (long) ROW_RIGHT[(int) ((board >>> 16) & ROW_MASK)] << 16
+                | (long) ROW_RIGHT[(int) ((board >>> 32) & ROW_MASK)] << 32
+                | (long) ROW_RIGHT[(int) (board >>> 48)] << 48;
+    }
+
+    /**
+     * Shifts every column of the board upward.
+     */
+    public static long moveUp(long board) {
+        long t = transpose(board);
+        return COL_UP[(int) (t & ROW_MASK)]
+                | COL_UP[(int) ((t >>> 16) & ROW_MASK)] << 4
+                | COL_UP[(int) ((t >>> 32) & ROW_MASK)] << 8
+                | COL_UP[(int) (t >>> 48)] << 12;
+    }
+
+    /**
+     * Shifts every column of the board downward.
+     */
+    public static long moveDown(long board) {
+        long t = transpose(board);
+        return COL_DOWN[(int) (t & ROW_MASK)]
+                | COL_DOWN[(int) ((t >>> 16) & ROW_MASK)] << 4
+                | COL_DOWN[(int) ((t >>> 32) & ROW_MASK)] << 8
+                | COL_DOWN[(int) (t >>> 48)] << 12;
+    }
+
+    /**
+     * Shifts the board in the given direction. No tile is spawned.
+     * @param board packed board
+     * @param direction where the tiles go
+     * @return the board after the move
+     */
+    public static long move(long board, Direction direction) {
+        switch (direction) {
+            case LEFT: return moveLeft(board);
+            case RIGHT: return moveRight(board);
+            case UP: return moveUp(board);
+            default: return moveDown(board);
+        }
+    }
+
+    /**
+     * Checks if a move would change the board, from the row tables and without making it.
+     * @param board packed board
+     * @param direction where the tiles would go
+     * @return true if some tile would slide or merge
+     */
+    public static boolean canMove(long board, Direction direction) {
+        // LEFT and RIGHT look at the rows; UP and DOWN are LEFT and RIGHT on the transposed board
+        long lines = direction.ordinal() < 2 ? board : transpose(board);
+        return (rowMoves(lines) & (1 << (direction.ordinal() & 1))) != 0;
+    }
+
+    /**
+     * The moves that would change the board, found from the row tables without making them.
+     * @param board packed board
+     * @return bit d set when the direction with ordinal d is legal, 0 if the game is over
+     */
+    public static int legalMoves(long board) {
+        return rowMoves(board) | rowMoves(transpose(board)) << 2;
+    }
+
+    /**
+     * Finds the k-th legal move of a mask made by legalMoves(), in the order of the directions.
+     * @param legal mask of legal moves
+     * @param k index among the legal moves, below Integer.bitCount(legal)
+     * @return the direction
+     */
+    public static Direction selectMove(int legal, int k) {
+        for (; k > 0; k--) {
+            legal &= legal - 1;
+        }
+        return Direction.of(Integer.numberOfTrailingZeros(legal));
+    }
+
+    private static int rowMoves(long board) {
+        return ROW_MOVES[(int) (board & ROW_MASK)] | ROW_MOVES[(int) ((board >>> 16) & ROW_MASK)]
+                | ROW_MOVES[(int) ((board >>> 32) & ROW_MASK)] | ROW_MOVES[(int) (board >>> 48)];
+    }
+
+    /**
+     * Points earned by shifting the board in the given direction.
+     * @param board packed board
+     * @param direction where the tiles go
+     * @return sum of all merged tiles
+     */
+    public static int score(long board, Direction direction) {
+        switch (direction) {
+            case LEFT: return rowScore(board, SCORE_LEFT);
+            case RIGHT: return rowScore(board, SCORE_RIGHT);
+            case UP: return rowScore(transpose(board), SCORE_LEFT);
+            default: return rowScore(transpose(board), SCORE_RIGHT);
+        }
+    }
+
+    private static int rowScore(long board, int[] table) {
+        return table[(int) (board & ROW_MASK)]
+                + table[(int) ((board >>> 16) & ROW_MASK)]
+                + table[(int) ((board >>> 32) & ROW_MASK)]
+                + table[(int) (board >>> 48)];
+    }
+
+    /**
+     * Counts the empty cells without looking at them one at a time.
+     * @param board packed board
+     * @return number of empty cells, from 0 to 16
+     */
+    public static int emptyCount(long board) {
+        return Long.bitCount(emptyMask(board));
+    }
+
+    /**
+     * Marks the empty cells of a board.
+     * @param board packed board
+     * @return a mask with the lowest bit of every empty cell's nibble set
+     */
+    public static long emptyMask(long board) {
+        long occupied = board | (board >>> 1);
+        occupied |= occupied >>> 2;
+        return ~occupied & LOW_NIBBLE_BITS;
+    }
+
+    /**
+     * Puts a new 2 or 4 on a random empty cell, with the same odds as
+     * TwentyFortyEight.generateRandomNumber().
+     * @param board packed board
+     * @param rng source of randomness, owned by the caller
+     * @return the board with one more tile, or the same board if it is full
+     */
+    public static long spawn(long board, SplittableRandom rng) {
+        long empty = emptyMask(board);
+        if (empty == 0) {
+            return board;
+        }
+        int cell = selectCell(empty, rng.nextInt(Long.bitCount(empty)));
+        long exponent = rng.nextInt(TwentyFortyEight.SPAWN_ROLLS) < TwentyFortyEight.FOUR_ROLLS
+                ? 2 : 1;
+        return board | (exponent << (cell << 2));
+    }
+
+    /**
+     * Finds the k-th cell of a mask made by emptyMask(), counting from cell 0, with a binary
+     * search over halves of the mask instead of a walk over the cells.
+     * @param mask a mask with the lowest bit of each selected nibble set
+     * @param k index among the selected cells, below Long.bitCount(mask)
+     * @return cell index from 0 to 15, that is 4 * row + col
+     */
+    public static int selectCell(long mask, int k) {
+        int shift = 0;
+        for (int width = 32; width >= 4; width >>>= 1) {
+            long low = (mask >>> shift) & ((1L << width) - 1);
+            int count = Long.bitCount(low);
+            if (k >= count) {
+                k -= count;
+                shift += width;
+            }
+        }
+        return shift >>> 2;
+    }
+
+    /**
+     * Getter for the largest exponent on the board.
+     * @return log2 of the highest tile, or 0 for an empty board
+     */
+    public static int maxExponent(long board) {
+        return Math.max(Math.max(ROW_MAX[(int) (board & ROW_MASK)],
+                        ROW_MAX[(int) ((board >>> 16) & ROW_MASK)]),
+                Math.max(ROW_MAX[(int) ((board >>> 32) & ROW_MASK)],
+                        ROW_MAX[(int) (board >>> 48)]));
+    }
+
+    /**
+     * Getter for the value of the highest tile on the board.
+     */
+    public static int maxTile(long board) {
+        return toValue(maxExponent(board));
+    }
+
+    /**
+     * Counts the pairs of neighbouring cells, in a row or in a column, that hold the same
+     * non-empty tile. Each cell is compared with its right and lower neighbour all at once by
+     * XOR-ing the board with itself shifted by one cell or one row.
+     * @param board packed board
+     * @return number of mergeable pairs, from 0 to 24
+     */
+    public static int mergeablePairs(long board) {
+        long occupied = ~emptyMask(board) & LOW_NIBBLE_BITS;
+        long horizontal = emptyMask(board ^ (board >>> 4)) & HAS_RIGHT;
+        long vertical = emptyMask(board ^ (board >>> 16)) & HAS_BELOW;
+        return Long.bitCount(horizontal & occupied) + Long.bitCount(vertical & occupied);
+    }
+
+    /**
+     * Checks if two neighbouring cells in a row or column hold the same non-empty tile.
+     * @param board packed board
+     * @return true if some move would merge two tiles
+     */
+    public static boolean hasMergeablePairs(long board) {
+        return mergeablePairs(board) != 0;
+    }
+
+    /**
+     * Check if no move can change the board. Two neighbouring tiles of MAX_EXPONENT do not
+     * merge, so a full board can be over even with such a pair on it.
+     * @param board packed board
+     * @return true if the game is over; false otherwise.
+     */
+    public static boolean isGameOver(long board) {
+        return emptyCount(board) == 0 && legalMoves(board) == 0;
+    }
+}
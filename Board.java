@@ -3,74 +3,333 @@ package org.cis120.twentyfortyeight;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.JMException;
 import javax.swing.*;
 
+/**
+ * Shows a game and turns key presses and buttons into commands for it.
+ *
+ * The game itself runs on the model thread of a GameLoop. This panel only queues commands and
+ * renders the latest GameSnapshot the loop published, so a slow move never holds up the Swing
+ * thread and key presses are never lost while the model catches up.
+ *
+ * Hints come from a HintService searching the snapshot on screen. The status line shows each
+ * hint as the search deepens, and a new snapshot cancels the search for the old one. With
+ * auto-play on, the final hint for every snapshot is played as a move. The search never runs on
+ * the Swing thread.
+ */
 public class Board extends JPanel {
-    private TwentyFortyEight tfe;
+    private final GameLoop loop;
     private JLabel status;
+    // Finished games are recorded here, null if the file could not be opened
+    private Leaderboard leaderboard;
 
     public static final int BOARD_WIDTH = 400;
     public static final int BOARD_HEIGHT = 400;
 
+    public static final String LEADERBOARD_FILE = "files/leaderboard.dat";
+    public static final String SAVE_FILE = "files/SavedBoards.sav";
+    // Setting this system property to true counts what the engine does and shows it over JMX
+    public static final String METRICS_PROPERTY = "twentyfortyeight.metrics";
+    // Number of recent input-to-render latencies kept for inputLatencyPercentile()
+    public static final int LATENCY_SAMPLES = 1024;
+    // Time budget of a hint search in milliseconds, HintService.DEFAULT_BUDGET_MILLIS if not set
+    public static final String HINT_MILLIS_PROPERTY = "twentyfortyeight.hintMillis";
+    // Longest wait for the model thread to finish its queued commands when the program exits
+    public static final long QUIT_MILLIS = 1000;
+
+    private static final String INSTRUCTIONS =
+            "Press WASD to merge the numbers and get to the 2048 tile!";
+
+    private static final Font SCORE_FONT = new Font("TimesRoman", Font.PLAIN, 18);
+
+    // Frame pacing and length of the slide animation
+    public static final int FRAME_MILLIS = 16;
+    public static final long SLIDE_NANOS = 100000000L;
+
+    // Replaced along with frame whenever the game changes size
+    private BoardRenderer renderer = new BoardRenderer(BitBoard.SIZE);
+    private byte[] frame = new byte[BitBoard.SIZE * BitBoard.SIZE];
+    // The snapshot being shown, only used on the Swing thread
+    private GameSnapshot shown;
+    // The newest snapshot from the model thread, and whether showing it is already scheduled
+    private final AtomicReference<GameSnapshot> latest = new AtomicReference<>();
+    private final AtomicBoolean showPending = new AtomicBoolean();
+    // Keys held down, to tell auto-repeat events from new presses
+    private final boolean[] held = new boolean[Direction.values().length];
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+    private long renderedSequence = -1;
+    private int shownHighest;
+    private int shownCurrent;
+    private String highestText;
+    private String currentText;
+
+    private final HintService hints;
+    // Whether the final hint for each snapshot is played, and whether a hint is on the status line
+    private boolean autoPlay;
+    private boolean hintShown;
+
+    // The move being animated, or null when the board is still
+    private MoveDelta animation;
+    private long animationStart;
+    private final Timer animationTimer;
+
     public Board(JLabel statusInit) {
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
         setFocusable(true);
 
-        tfe = new TwentyFortyEight();
+        TwentyFortyEight tfe = new TwentyFortyEight();
         status = statusInit;
+        try {
+            leaderboard = Leaderboard.open(Paths.get(LEADERBOARD_FILE));
+            tfe.setLeaderboard(leaderboard);
+        } catch (IOException e) {
+            System.out.println("Leaderboard not available: " + e.getMessage());
+        }
+        if (Boolean.getBoolean(METRICS_PROPERTY)) {
+            GameMetrics metrics = new GameMetrics();
+            try {
+                metrics.register("board");
+                tfe.setMetrics(metrics);
+            } catch (JMException e) {
+                System.out.println("Metrics not available: " + e.getMessage());
+            }
+        }
+        shown = new GameSnapshot(tfe, null, -1, System.nanoTime());
+        loop = new GameLoop(tfe, SAVE_FILE, this::publish);
+        hints = new HintService(Long.getLong(HINT_MILLIS_PROPERTY,
+                HintService.DEFAULT_BUDGET_MILLIS),
+                hint -> SwingUtilities.invokeLater(() -> showHint(hint)));
 
+        // Each tick only repaints; how far tiles have slid depends on the time since the move,
+        // so late ticks never slow the animation down.
+        animationTimer = new Timer(FRAME_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (animation != null && System.nanoTime() - animationStart >= SLIDE_NANOS) {
+                    stopAnimation();
+                }
+                repaint();
+            }
+        });
+
+        // Moves are only queued here; the model thread skips them once the game is won or over
         addKeyListener(new KeyAdapter() {
             public void keyPressed(KeyEvent ke) {
-                if (!tfe.hasWon() && !tfe.isGameOver()) {
-                    if (ke.getKeyCode() == KeyEvent.VK_A) {
-                        tfe.moveLeft();
-                    } else if (ke.getKeyCode() == KeyEvent.VK_D) {
-                        tfe.moveRight();
-                    } else if (ke.getKeyCode() == KeyEvent.VK_W) {
-                        tfe.moveUp();
-                    } else if (ke.getKeyCode() == KeyEvent.VK_S) {
-                        tfe.moveDown();
-                    }
-                    repaint();
+                Direction direction = directionOf(ke);
+                if (direction != null) {
+                    loop.move(direction, held[direction.ordinal()]);
+                    held[direction.ordinal()] = true;
                 }
             }
             public void keyReleased(KeyEvent ke) {
-                updateStatus();
+                Direction direction = directionOf(ke);
+                if (direction != null) {
+                    held[direction.ordinal()] = false;
+                }
             }
             public void keyTyped(KeyEvent ke) { }
         });
+        loop.start();
+    }
+
+    private static Direction directionOf(KeyEvent ke) {
+        switch (ke.getKeyCode()) {
+            case KeyEvent.VK_A: return Direction.LEFT;
+            case KeyEvent.VK_D: return Direction.RIGHT;
+            case KeyEvent.VK_W: return Direction.UP;
+            case KeyEvent.VK_S: return Direction.DOWN;
+            default: return null;
+        }
+    }
+
+    /**
+     * Called on the model thread with every new snapshot. Snapshots that arrive before the Swing
+     * thread got to the previous one replace it, so a burst of moves costs one repaint.
+     */
+    private void publish(GameSnapshot snapshot) {
+        latest.set(snapshot);
+        if (showPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::showLatest);
+        }
+    }
+
+    private void showLatest() {
+        showPending.set(false);
+        GameSnapshot snapshot = latest.get();
+        if (snapshot.getSequence() <= shown.getSequence()) {
+            return;
+        }
+        shown = snapshot;
+        // Whatever was being searched is out of date now
+        hints.cancel();
+        if (hintShown) {
+            hintShown = false;
+            status.setText(INSTRUCTIONS);
+        }
+        if (autoPlay) {
+            hints.request(snapshot);
+        }
+        if (snapshot.getLastMove() != null) {
+            startAnimation(snapshot.getLastMove());
+        } else {
+            stopAnimation();
+        }
+        updateStatus();
+        repaint();
+    }
+
+    /**
+     * Starts animating a move. A move that is still being animated is cut short, so the next
+     * key press never waits for the previous animation.
+     */
+    private void startAnimation(MoveDelta delta) {
+        animation = delta;
+        animationStart = System.nanoTime();
+        if (!animationTimer.isRunning()) {
+            animationTimer.start();
+        }
+    }
+
+    /**
+     * Ends the current animation, leaving the board in its final state.
+     */
+    private void stopAnimation() {
+        animation = null;
+        animationTimer.stop();
+    }
+
+    /**
+     * Shows a hint for the snapshot on screen, and plays it if auto-play is on and the search is
+     * done. Hints for any other snapshot are dropped.
+     */
+    private void showHint(Hint hint) {
+        if (hint.getSequence() != shown.getSequence()) {
+            return;
+        }
+        Direction move = hint.getMove();
+        if (move == null) {
+            status.setText("No move left");
+        } else {
+            status.setText("Hint: " + keyOf(move) + " (" + move.name().toLowerCase() + "), "
+                    + hint.getDepth() + (hint.getDepth() == 1 ? " move" : " moves") + " ahead"
+                    + (hint.isDone() ? "" : "..."));
+        }
+        hintShown = true;
+        if (autoPlay && hint.isDone() && move != null) {
+            loop.move(move, false);
+        }
+    }
+
+    private static String keyOf(Direction direction) {
+        switch (direction) {
+            case LEFT: return "A";
+            case RIGHT: return "D";
+            case UP: return "W";
+            default: return "S";
+        }
+    }
+
+    /**
+     * Starts searching for a hint for the board on screen. The search runs in the background and
+     * its hints show up on the status line.
+     */
+    public void hint() {
+        if (!hints.request(shown)) {
+            status.setText("Hints are only for 4x4 games that are still going");
+        }
+        requestFocusInWindow();
+    }
+
+    /**
+     * Turns auto-play on or off. While it is on, every snapshot is searched and the move found
+     * is played. It stays on through won and lost games, and picks up again after a reset.
+     * @param on whether the computer should play
+     */
+    public void setAutoPlay(boolean on) {
+        autoPlay = on;
+        if (on) {
+            hint();
+        } else {
+            hints.cancel();
+        }
+    }
+
+    /**
+     * Getter for whether auto-play is on
+     * @return true if the computer is playing
+     */
+    public boolean isAutoPlay() {
+        return autoPlay;
+    }
+
+    /**
+     * Setter for the time budget of hint searches
+     * @param millis how long one search may take
+     */
+    public void setHintBudget(long millis) {
+        hints.setBudgetMillis(millis);
     }
 
     public void reset() {
-        tfe.reset();
-        status.setText("Press WASD to merge the numbers and get to the 2048 tile!");
+        loop.reset();
+        status.setText(INSTRUCTIONS);
         repaint();
         requestFocusInWindow();
     }
 
-    public void undo() {
-        if (!tfe.hasWon() && !tfe.isGameOver() && tfe.numEmptyTile() != 14) {
-            tfe.undo();
-        } else if (tfe.hasWon()) {
-            status.setText("YOU WON!");
-        } else if (tfe.isGameOver()) {
-            status.setText("Game Over :(");
+    /**
+     * Stops the game before the program exits: the game in progress is recorded on the
+     * leaderboard, which is then forced to the disk.
+     */
+    public void quit() {
+        hints.shutdown();
+        try {
+            loop.stopAndWait(QUIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        status.setText("Press WASD to merge the numbers and get to the 2048 tile!");
+        if (leaderboard != null) {
+            try {
+                leaderboard.close();
+            } catch (IOException e) {
+                System.out.println("Could not save the leaderboard: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Starts a new game on a board of another size.
+     * @param size number of cells in a row
+     */
+    public void newGame(int size) {
+        loop.newGame(size);
+        status.setText(INSTRUCTIONS);
+        repaint();
+        requestFocusInWindow();
+    }
+
+    public void undo() {
+        loop.undo();
+        status.setText(INSTRUCTIONS);
         repaint();
         requestFocusInWindow();
     }
 
     public void save() {
-        tfe.saveBoard("files/SavedBoards.txt");
-        status.setText("Press WASD to merge the numbers and get to the 2048 tile!");
+        loop.save();
+        status.setText(INSTRUCTIONS);
         repaint();
         requestFocusInWindow();
     }
 
-    public void resume() throws IOException {
-        tfe.resumeBoard("files/SavedBoards.txt");
-        status.setText("Press WASD to merge the numbers and get to the 2048 tile!");
+    public void resume() {
+        loop.resume();
+        status.setText(INSTRUCTIONS);
         repaint();
         requestFocusInWindow();
     }
@@ -79,46 +338,95 @@ public class Board extends JPanel {
      * Updates the JLabel to reflect the current state of the game.
      */
     private void updateStatus() {
-        if (tfe.hasWon()) {
+        if (shown.hasWon()) {
             status.setText("YOU WON!");
-        } else if (tfe.isGameOver()) {
-            status.setText("Game Over :(");
+        } else if (shown.isGameOver()) {
+            status.setText(leaderboard == null ? "Game Over :(" : "Game Over :( Rank "
+                    + leaderboard.rank(shown.getCurrScore()) + " of "
+                    + leaderboard.getGameCount());
+        }
+    }
+
+    /**
+     * Getter for a percentile of the time from queuing input to first painting its result, over
+     * the last LATENCY_SAMPLES snapshots painted. Only call it on the Swing thread.
+     * @param p percentile from 0 to 100
+     * @return latency in nanoseconds, or 0 if nothing was painted yet
+     */
+    public long inputLatencyPercentile(double p) {
+        int n = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+        if (n == 0) {
+            return 0;
         }
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p / 100 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
     }
 
     @Override
     public void paint(Graphics g) {
         super.paint(g);
 
-        Tile[][] board = tfe.getBoard();
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                g.setColor(board[i][j].getBackgroundColor());
-                g.fillRect(50 + 75 * j, 50 + 75 * i, 75, 75);
-                g.setColor(board[i][j].getNumberColor());
-                g.setFont(new Font("TimesRoman", Font.PLAIN, 24));
-                g.drawString(String.valueOf(board[i][j].getValue()),
-                        79 + 75 * j, 89 + 75 * i);
-                g.setColor(Color.BLACK);
-                g.drawLine(50, 50, 350, 50);
-                g.drawLine(50, 125, 350, 125);
-                g.drawLine(50, 200, 350, 200);
-                g.drawLine(50, 275, 350, 275);
-                g.drawLine(50, 350, 350, 350);
-                g.drawLine(50, 50, 50, 350);
-                g.drawLine(125, 50, 125, 350);
-                g.drawLine(200, 50, 200, 350);
-                g.drawLine(275, 50, 275, 350);
-                g.drawLine(350, 50, 350, 350);
+        GameSnapshot snapshot = shown;
+        if (snapshot.getSequence() > renderedSequence) {
+            renderedSequence = snapshot.getSequence();
+            latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] =
+                    System.nanoTime() - snapshot.getInputNanos();
+        }
+        int size = snapshot.getSize();
+        if (renderer.getGridSize() != size) {
+            renderer = new BoardRenderer(size);
+            frame = new byte[size * size];
+        }
+        snapshot.copyExponents(frame);
+        MoveDelta delta = animation;
+        double progress = delta == null ? 1
+                : (double) (System.nanoTime() - animationStart) / SLIDE_NANOS;
+        if (progress < 1) {
+            // Tiles that did not move come from the back buffer, moving ones are drawn on top
+            for (int i = 0; i < delta.size(); i++) {
+                frame[delta.getDestination(i)] = 0;
             }
+            if (delta.getSpawnCell() >= 0) {
+                frame[delta.getSpawnCell()] = 0;
+            }
+            renderer.render(g, frame, getWidth(), getHeight());
+            for (int i = 0; i < delta.size(); i++) {
+                int source = delta.getSource(i);
+                int destination = delta.getDestination(i);
+                double col = source % size + (destination % size - source % size) * progress;
+                double row = source / size + (destination / size - source / size) * progress;
+                renderer.drawTile(g, delta.getExponent(i), col, row);
+            }
+        } else {
+            renderer.render(g, frame, getWidth(), getHeight());
         }
 
         g.setColor(Color.BLACK);
-        g.setFont(new Font("TimesRoman", Font.PLAIN, 18));
+        g.setFont(SCORE_FONT);
         g.drawString("Highest Score: ", 50, 30);
-        g.drawString(String.valueOf(tfe.getHighestScore()), 160, 30);
+        g.drawString(scoreText(snapshot.getHighestScore(), true), 160, 30);
         g.drawString("Current Score: ", 230, 30);
-        g.drawString(String.valueOf(tfe.getCurrScore()), 340, 30);
+        g.drawString(scoreText(snapshot.getCurrScore(), false), 340, 30);
+    }
+
+    /**
+     * Returns the text of a score, only building a new String when the score changed.
+     */
+    private String scoreText(int score, boolean highest) {
+        if (highest) {
+            if (score != shownHighest || highestText == null) {
+                shownHighest = score;
+                highestText = String.valueOf(score);
+            }
+            return highestText;
+        }
+        if (score != shownCurrent || currentText == null) {
+            shownCurrent = score;
+            currentText = String.valueOf(score);
+        }
+        return currentText;
     }
 
     @Override
@@ -0,0 +1,312 @@
+package org.cis120.twentyfortyeight;
+
+/**
+ * Many 4x4 games held side by side in flat arrays, one slot per game, and moved all at once.
+ *
+ * A game is a packed board (see BitBoard), its score, its move count and the state of its own
+ * spawner, each in a primitive array indexed by slot, so stepping every game walks a few arrays
+ * from front to back and touches no objects. Tiles are drawn from each game's spawner state the
+ * way TileSpawner draws them, so a game moved by the caller gets the same tiles as a
+ * TwentyFortyEight with a TileSpawner of the same seed. randomMoves() draws from that state too.
+ *
+ * Games that are still going fill slots 0 to getActive() - 1. compact() swaps games that are over
+ * to the end, after the active ones, where their final board, score and move count stay readable
+ * until clear(). Slots therefore change when games finish; getId() tells which game is in a slot.
+ *
+ * A round is move(), spawn() and compact(), or step() for all three. One BoardBatch should only be
+ * used by one thread at a time.
+ */
+public class BoardBatch {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long[] boards;
+    private final int[] scores;
+    private final int[] moves;
+    private final long[] seeds;
+    private final int[] ids;
+    // Directions that change the board in each active slot, as made by BitBoard.legalMoves()
+    private final byte[] legal;
+    // Bit i of word i >>> 6 is set when the last move() changed the board in slot i
+    private final long[] changed;
+    private int count;
+    private int active;
+
+    /**
+     * Creates an empty batch.
+     * @param capacity the most games the batch can hold
+     */
+    public BoardBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        boards = new long[capacity];
+        scores = new int[capacity];
+        moves = new int[capacity];
+        seeds = new long[capacity];
+        ids = new int[capacity];
+        legal = new byte[capacity];
+        changed = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Adds a game with a board of its own.
+     * @param board packed board
+     * @param seed seed of the game's spawner
+     * @return id of the game, the number of games added before it since clear()
+     */
+    public int add(long board, long seed) {
+        if (count == boards.length) {
+            throw new IllegalStateException("Batch is full");
+        }
+        int id = count++;
+        int slot = id;
+        boards[slot] = board;
+        scores[slot] = 0;
+        moves[slot] = 0;
+        seeds[slot] = seed;
+        ids[slot] = id;
+        legal[slot] = (byte) BitBoard.legalMoves(board);
+        // A game that is not over yet trades places with the first finished one
+        if (legal[slot] != 0) {
+            swap(slot, active++);
+        }
+        return id;
+    }
+
+    /**
+     * Adds a new game, with the two opening tiles of its spawner on an empty board.
+     * @param seed seed of the game's spawner
+     * @return id of the game
+     */
+    public int addNew(long seed) {
+        long state = seed;
+        long board = 0;
+        for (int i = 0; i < 2; i++) {
+            long empty = BitBoard.emptyMask(board);
+            int cell = BitBoard.selectCell(empty, bounded(state += GOLDEN_GAMMA,
+                    Long.bitCount(empty)));
+            long exponent = bounded(state += GOLDEN_GAMMA, TwentyFortyEight.SPAWN_ROLLS)
+                    < TwentyFortyEight.FOUR_ROLLS ? 2 : 1;
+            board |= exponent << (cell << 2);
+        }
+        return add(board, state);
+    }
+
+    private void swap(int a, int b) {
+        long board = boards[a];
+        boards[a] = boards[b];
+        boards[b] = board;
+        int score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int made = moves[a];
+        moves[a] = moves[b];
+        moves[b] = made;
+        long seed = seeds[a];
+        seeds[a] = seeds[b];
+        seeds[b] = seed;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        byte directions = legal[a];
+        legal[a] = legal[b];
+        legal[b] = directions;
+    }
+
+    /**
+     * Moves every active game in its own direction. A direction that does not change a board
+     * leaves that game as it was, without counting a move.
+     * @param directions ordinal of the direction for each active slot
+     * @return number of boards that changed
+     */
+    public int move(byte[] directions) {
+        int moved = 0;
+        for (int w = 0; w < changed.length; w++) {
+            changed[w] = 0;
+        }
+        for (int i = 0; i < active; i++) {
+            long board = boards[i];
+            Direction direction = Direction.of(directions[i]);
+            long next = BitBoard.move(board, direction);
+            if (next != board) {
+                scores[i] += BitBoard.score(board, direction);
+                moves[i]++;
+                boards[i] = next;
+                changed[i >>> 6] |= 1L << i;
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Adds a tile to every board that the last move() changed.
+     */
+    public void spawn() {
+        for (int w = 0; w < changed.length; w++) {
+            long bits = changed[w];
+            while (bits != 0) {
+                int i = (w << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                long board = boards[i];
+                long empty = BitBoard.emptyMask(board);
+                long state = seeds[i];
+                int cell = BitBoard.selectCell(empty, bounded(state += GOLDEN_GAMMA,
+                        Long.bitCount(empty)));
+                long exponent = bounded(state += GOLDEN_GAMMA, TwentyFortyEight.SPAWN_ROLLS)
+                        < TwentyFortyEight.FOUR_ROLLS ? 2 : 1;
+                seeds[i] = state;
+                boards[i] = board | exponent << (cell << 2);
+            }
+        }
+    }
+
+    /**
+     * Finds the games that are over, that is where no direction changes the board, and moves them
+     * after the active ones.
+     * @return number of games that finished
+     */
+    public int compact() {
+        int finished = 0;
+        int i = 0;
+        while (i < active) {
+            int directions = BitBoard.legalMoves(boards[i]);
+            legal[i] = (byte) directions;
+            if (directions == 0) {
+                swap(i, --active);
+                finished++;
+            } else {
+                i++;
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Plays one round: move(), spawn() and compact().
+     * @param directions ordinal of the direction for each active slot
+     * @return number of games that finished
+     */
+    public int step(byte[] directions) {
+        move(directions);
+        spawn();
+        return compact();
+    }
+
+    /**
+     * Picks a uniformly random direction that changes the board for every active game, drawn
+     * from the game's own spawner. The directions that change each board were found by the last
+     * compact(), or by add().
+     * @param directions receives the ordinal of the direction for each active slot
+     */
+    public void randomMoves(byte[] directions) {
+        for (int i = 0; i < active; i++) {
+            int mask = legal[i];
+            long state = seeds[i] += GOLDEN_GAMMA;
+            int k = bounded(state, Integer.bitCount(mask));
+            directions[i] = (byte) BitBoard.selectMove(mask, k).ordinal();
+        }
+    }
+
+    /**
+     * Plays random moves in every active game until all of them are over.
+     * @return moves made
+     */
+    public long playRandom() {
+        byte[] directions = new byte[boards.length];
+        long total = 0;
+        while (active > 0) {
+            randomMoves(directions);
+            total += move(directions);
+            spawn();
+            compact();
+        }
+        return total;
+    }
+
+    /**
+     * Removes every game.
+     */
+    public void clear() {
+        count = 0;
+        active = 0;
+    }
+
+    /**
+     * The splitmix64 output for a state, scaled to [0, bound) like TileSpawner.nextInt().
+     */
+    private static int bounded(long state, int bound) {
+        long z = (state ^ (state >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Getter for the number of games in the batch
+     * @return games added since clear()
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Getter for the number of games still going
+     * @return games in slots 0 to getActive() - 1
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * Getter for the most games the batch can hold
+     * @return capacity
+     */
+    public int getCapacity() {
+        return boards.length;
+    }
+
+    /**
+     * Getter for the board in a slot
+     * @param slot slot below getCount()
+     * @return packed board
+     */
+    public long getBoard(int slot) {
+        return boards[checkSlot(slot)];
+    }
+
+    /**
+     * Getter for the score of the game in a slot
+     * @param slot slot below getCount()
+     * @return points scored so far
+     */
+    public int getScore(int slot) {
+        return scores[checkSlot(slot)];
+    }
+
+    /**
+     * Getter for the number of moves made in the game in a slot
+     * @param slot slot below getCount()
+     * @return moves that changed the board
+     */
+    public int getMoves(int slot) {
+        return moves[checkSlot(slot)];
+    }
+
+    /**
+     * Getter for the game in a slot
+     * @param slot slot below getCount()
+     * @return id returned by add() for the game
+     */
+    public int getId(int slot) {
+        return ids[checkSlot(slot)];
+    }
+
+    private int checkSlot(int slot) {
+        if (slot < 0 || slot >= count) {
+            throw new IllegalArgumentException("No game in slot " + slot);
+        }
+        return slot;
+    }
+}
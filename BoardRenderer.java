@@ -0,0 +1,181 @@
+package org.cis120.twentyfortyeight;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws the grid of tiles for Board.
+ *
+ * Every tile is drawn once per value and cell size into a small image (a sprite), with its
+ * background, its number and the grid lines on its top and left edges. The grid is kept in an
+ * offscreen back buffer that starts out with the bottom and right border lines, the only lines no
+ * sprite covers. When the board changes, only the cells whose value changed are copied onto the
+ * back buffer, and the panel just draws the back buffer. Nothing is allocated while painting
+ * unless the panel was resized or a tile value shows up for the first time.
+ *
+ * The cell size follows the panel size and the number of cells in a row, so any board size from
+ * GridBoard.MIN_SIZE to GridBoard.MAX_SIZE fits the panel.
+ */
+public class BoardRenderer {
+
+    public static final int MARGIN = 50;
+    // Tile exponents that get a sprite, each drawn the first time it is needed
+    public static final int MAX_EXPONENT = GridBoard.MAX_EXPONENT;
+
+    private static final int BASE_CELL = 75;
+    private static final int BASE_FONT = 24;
+
+    private final int gridSize;
+    // Sprites for each cell size seen so far, indexed by exponent
+    private final Map<Integer, BufferedImage[]> sprites = new HashMap<>();
+
+    private int cellSize;
+    private Font font;
+    private BufferedImage[] currentSprites;
+    private BufferedImage backBuffer;
+    // Exponents currently on the back buffer
+    private final byte[] drawn;
+    private boolean backBufferValid;
+
+    /**
+     * Creates a renderer for a square grid.
+     * @param gridSize number of cells in a row
+     */
+    public BoardRenderer(int gridSize) {
+        this.gridSize = gridSize;
+        drawn = new byte[gridSize * gridSize];
+    }
+
+    /**
+     * Getter for the number of cells in a row
+     * @return gridSize
+     */
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Cell size that fits a panel of the given size with MARGIN on every side, never smaller
+     * than 1 pixel.
+     */
+    public int cellSizeFor(int width, int height) {
+        return Math.max(1, (Math.min(width, height) - 2 * MARGIN) / gridSize);
+    }
+
+    /**
+     * Getter for the current cell size in pixels
+     * @return cellSize
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Draws the grid at (MARGIN, MARGIN).
+     * @param g graphics of the panel
+     * @param exponents exponent of every cell, cell (row, col) at row * gridSize + col
+     * @param width width of the panel
+     * @param height height of the panel
+     */
+    public void render(Graphics g, byte[] exponents, int width, int height) {
+        int size = cellSizeFor(width, height);
+        if (size != cellSize || backBuffer == null) {
+            resize(size);
+        }
+        Graphics2D bg = null;
+        for (int k = 0; k < drawn.length; k++) {
+            if (!backBufferValid || drawn[k] != exponents[k]) {
+                if (bg == null) {
+                    bg = backBuffer.createGraphics();
+                }
+                bg.drawImage(sprite(exponents[k]), (k % gridSize) * cellSize,
+                        (k / gridSize) * cellSize, null);
+                drawn[k] = exponents[k];
+            }
+        }
+        if (bg != null) {
+            bg.dispose();
+        }
+        backBufferValid = true;
+        g.drawImage(backBuffer, MARGIN, MARGIN, null);
+    }
+
+    /**
+     * Draws a single tile on top of the grid, anywhere on it. Used for tiles that are between
+     * cells while a move is animated. Only valid after render() has been called at least once.
+     * @param g graphics of the panel
+     * @param exponent exponent of the tile
+     * @param col column, may be fractional
+     * @param row row, may be fractional
+     */
+    public void drawTile(Graphics g, int exponent, double col, double row) {
+        g.drawImage(sprite(exponent), MARGIN + (int) Math.round(col * cellSize),
+                MARGIN + (int) Math.round(row * cellSize), null);
+    }
+
+    /**
+     * Forgets what is on the back buffer, so the next render draws every cell again.
+     */
+    public void invalidate() {
+        backBufferValid = false;
+    }
+
+    /**
+     * Switches to a new cell size: looks up or draws the sprites and starts a new back buffer
+     * holding only the static border lines.
+     */
+    private void resize(int size) {
+        cellSize = size;
+        font = new Font("TimesRoman", Font.PLAIN, Math.max(1, BASE_FONT * size / BASE_CELL));
+        currentSprites = sprites.computeIfAbsent(size, s -> new BufferedImage[MAX_EXPONENT + 1]);
+        int pixels = size * gridSize + 1;
+        backBuffer = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_RGB);
+        Graphics2D bg = backBuffer.createGraphics();
+        bg.setColor(Color.BLACK);
+        bg.drawLine(0, pixels - 1, pixels - 1, pixels - 1);
+        bg.drawLine(pixels - 1, 0, pixels - 1, pixels - 1);
+        bg.dispose();
+        backBufferValid = false;
+    }
+
+    /**
+     * Returns the sprite of an exponent at the current cell size, drawing it if needed.
+     */
+    private BufferedImage sprite(int exponent) {
+        BufferedImage image = currentSprites[exponent];
+        if (image == null) {
+            image = drawSprite(exponent, cellSize, font);
+            currentSprites[exponent] = image;
+        }
+        return image;
+    }
+
+    /**
+     * Draws the sprite of one exponent for a cell size.
+     */
+    private static BufferedImage drawSprite(int exponent, int size, Font font) {
+        TileStyle style = TileStyle.ofExponent(exponent);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(style.getBackgroundColor());
+        g.fillRect(0, 0, size, size);
+        if (exponent != 0) {
+            String label = style.getLabel();
+            g.setFont(style.getFontScale() == 1 ? font
+                    : font.deriveFont(font.getSize2D() * style.getFontScale()));
+            FontMetrics metrics = g.getFontMetrics();
+            g.setColor(style.getNumberColor());
+            g.drawString(label, (size - metrics.stringWidth(label)) / 2,
+                    (size - metrics.getHeight()) / 2 + metrics.getAscent());
+        }
+        g.setColor(Color.BLACK);
+        g.drawLine(0, 0, size - 1, 0);
+        g.drawLine(0, 0, 0, size - 1);
+        g.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,20 @@
+package org.cis120.twentyfortyeight;
+
+/**
+ * The four directions the player can shift the tiles in. The order of the constants is used as
+ * an index by the move engine, so it should not be changed.
+ */
+public enum Direction {
+    LEFT, RIGHT, UP, DOWN;
+
+    private static final Direction[] VALUES = values();
+
+    /**
+     * Returns the direction with the given ordinal without copying the values() array.
+     * @param ordinal index of the direction, from 0 to 3
+     * @return the matching direction
+     */
+    public static Direction of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
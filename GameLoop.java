@@ -0,0 +1,217 @@
+package org.cis120.twentyfortyeight;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Runs a game on a thread of its own, so the Swing thread only queues input and renders.
+ *
+ * The Swing thread puts commands in an InputQueue. The model thread takes everything waiting at
+ * once, applies it in order to the game, and publishes one GameSnapshot for the whole batch to a
+ * listener. A burst of input therefore costs one snapshot and one repaint, and every command is
+ * applied in the order it was queued.
+ *
+ * Commands are ints: 0 to 3 move in the direction with that ordinal, then UNDO, RESET, SAVE,
+ * RESUME, and NEW_GAME with the board size in the bits above COMMAND_BITS. Only the model thread
+ * touches the game. A command that throws is logged and skipped, so the thread keeps running.
+ */
+public class GameLoop {
+
+    public static final int QUEUE_CAPACITY = 256;
+
+    private static final int UNDO = 4;
+    private static final int RESET = 5;
+    private static final int SAVE = 6;
+    private static final int RESUME = 7;
+    private static final int NEW_GAME = 8;
+    private static final int COMMAND_BITS = 8;
+
+    private final InputQueue queue = new InputQueue(QUEUE_CAPACITY);
+    private final Consumer<GameSnapshot> listener;
+    private final String saveFile;
+    private final Thread thread;
+
+    // Only used by the model thread
+    private TwentyFortyEight game;
+    private long sequence;
+
+    /**
+     * Sets up the model thread for a game. Nothing runs until start() is called, and after that
+     * the game must not be used by any other thread.
+     * @param game game to run
+     * @param saveFile file used by save() and resume()
+     * @param listener receives every snapshot, on the model thread
+     */
+    public GameLoop(TwentyFortyEight game, String saveFile, Consumer<GameSnapshot> listener) {
+        this.game = game;
+        this.saveFile = saveFile;
+        this.listener = listener;
+        thread = new Thread(this::run, "2048-model");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the model thread, which first publishes the state the game is in.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops taking commands. Commands already queued are still applied before the thread ends,
+     * and the game is then recorded on its leaderboard.
+     */
+    public void stop() {
+        queue.close();
+    }
+
+    /**
+     * Stops taking commands and waits for the model thread to end, for example before the
+     * program exits.
+     * @param millis longest time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void stopAndWait(long millis) throws InterruptedException {
+        stop();
+        thread.join(millis);
+    }
+
+    /**
+     * Queues a move.
+     * @param direction where the tiles go
+     * @param repeat whether the move comes from the auto-repeat of a held key
+     * @return false if the queue was full and the move was refused
+     */
+    public boolean move(Direction direction, boolean repeat) {
+        return queue.offer(direction.ordinal(), repeat);
+    }
+
+    /**
+     * Queues an undo.
+     * @return false if the queue was full and the command was refused
+     */
+    public boolean undo() {
+        return queue.offer(UNDO, false);
+    }
+
+    /**
+     * Queues a reset of the game.
+     * @return false if the queue was full and the command was refused
+     */
+    public boolean reset() {
+        return queue.offer(RESET, false);
+    }
+
+    /**
+     * Queues saving the game.
+     * @return false if the queue was full and the command was refused
+     */
+    public boolean save() {
+        return queue.offer(SAVE, false);
+    }
+
+    /**
+     * Queues loading the saved game.
+     * @return false if the queue was full and the command was refused
+     */
+    public boolean resume() {
+        return queue.offer(RESUME, false);
+    }
+
+    /**
+     * Queues replacing the game with a new one on a board of another size. The old game is
+     * recorded on the leaderboard first, and the new one keeps its leaderboard and metrics.
+     * @param size number of cells in a row
+     * @return false if the queue was full and the command was refused
+     */
+    public boolean newGame(int size) {
+        if (size < GridBoard.MIN_SIZE || size > GridBoard.MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be from " + GridBoard.MIN_SIZE
+                    + " to " + GridBoard.MAX_SIZE);
+        }
+        return queue.offer(NEW_GAME | size << COMMAND_BITS, false);
+    }
+
+    /**
+     * Getter for the number of auto-repeat moves dropped because one was already waiting
+     * @return repeats coalesced so far
+     */
+    public long getCoalesced() {
+        return queue.getCoalesced();
+    }
+
+    /**
+     * Getter for the number of commands refused because the queue was full
+     * @return commands refused so far
+     */
+    public long getRejected() {
+        return queue.getRejected();
+    }
+
+    private void run() {
+        int[] commands = new int[queue.capacity()];
+        long[] times = new long[queue.capacity()];
+        listener.accept(new GameSnapshot(game, null, sequence, System.nanoTime()));
+        try {
+            int count;
+            while ((count = queue.takeAll(commands, times)) >= 0) {
+                MoveDelta lastMove = null;
+                for (int i = 0; i < count; i++) {
+                    // A command that fails is dropped, and the loop goes on with the next one
+                    try {
+                        lastMove = apply(commands[i]);
+                    } catch (RuntimeException e) {
+                        System.out.println("Could not apply command " + commands[i] + ": " + e);
+                    }
+                }
+                sequence += count;
+                listener.accept(new GameSnapshot(game, lastMove, sequence, times[0]));
+            }
+            // Stopped: the game being left counts like one that was reset
+            game.recordResult();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Applies one command to the game.
+     * @return the delta if the command was a move that was made, null otherwise
+     */
+    private MoveDelta apply(int command) {
+        int code = command & ((1 << COMMAND_BITS) - 1);
+        if (code < UNDO) {
+            return game.hasWon() || game.isGameOver() ? null : game.move(Direction.of(code));
+        }
+        switch (code) {
+            case UNDO:
+                // Never back past the start of this game into the one before a reset
+                if (!game.hasWon() && !game.isGameOver() && game.getMoveCount() > 0
+                        && game.getUndoSize() > 0) {
+                    game.undo();
+                }
+                break;
+            case RESET:
+                game.reset();
+                break;
+            case SAVE:
+                game.saveBoard(saveFile);
+                break;
+            case RESUME:
+                try {
+                    game.resumeBoard(saveFile);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.out.println("Could not resume the game: " + e.getMessage());
+                }
+                break;
+            default:
+                TwentyFortyEight old = game;
+                old.recordResult();
+                game = new TwentyFortyEight(command >>> COMMAND_BITS, new TileSpawner());
+                game.setLeaderboard(old.getLeaderboard());
+                game.setMetrics(old.getMetrics());
+                break;
+        }
+        return null;
+    }
+}
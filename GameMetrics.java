@@ -0,0 +1,267 @@
+package org.cis120.twentyfortyeight;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of what a game's engine does: moves per direction, moves that changed nothing, new
+ * tiles, merges per move, undos and the undo depth, and how long saves and resumes take. A game
+ * only updates them while a GameMetrics is attached with TwentyFortyEight.setMetrics(); without
+ * one every hook is skipped by a single null check.
+ *
+ * The counters are plain fields written by the thread that plays the game, so attaching one to a
+ * game costs a few increments per move. One GameMetrics may serve several games as long as they
+ * are played on the same thread. Other threads, such as JMX, read the counters without locking
+ * and may see values a moment old.
+ *
+ * Timing a move costs more than the move itself, so move latency is only measured every
+ * LATENCY_SAMPLE_INTERVAL-th move, into per-direction histograms with one bucket per power of two
+ * nanoseconds. Percentiles are the upper bound of their bucket.
+ *
+ * While attached, moves and saves are also emitted as Flight Recorder events (MoveEvent,
+ * SaveEvent), which cost nothing unless a recording enables them.
+ */
+public class GameMetrics implements GameMetricsMXBean {
+
+    public static final int LATENCY_SAMPLE_INTERVAL = 64;
+    // Moves that merged this many pairs or more share the last bucket of getMergesPerMove()
+    public static final int MERGE_BUCKETS = 17;
+
+    private static final int LATENCY_BUCKETS = 64;
+
+    private final long[] moves = new long[Direction.values().length];
+    private final long[][] latency = new long[Direction.values().length][LATENCY_BUCKETS];
+    private final long[] mergesPerMove = new long[MERGE_BUCKETS];
+    private long noOpMoves;
+    private long spawns;
+    private long merges;
+    private long undos;
+    private int undoDepth;
+    private long saves;
+    private long saveNanos;
+    private long saveNanosMax;
+    private long resumes;
+    private long resumeNanos;
+    private long resumeNanosMax;
+    private int sampleCountdown = LATENCY_SAMPLE_INTERVAL;
+    private ObjectName registered;
+
+    /**
+     * Called before a move.
+     * @return System.nanoTime() if this move is timed, 0 otherwise
+     */
+    long moveStarted() {
+        if (--sampleCountdown > 0) {
+            return 0;
+        }
+        sampleCountdown = LATENCY_SAMPLE_INTERVAL;
+        return System.nanoTime();
+    }
+
+    /**
+     * Called after a move, including its new tile and undo snapshot.
+     * @param start value returned by moveStarted()
+     */
+    void moveDone(Direction direction, long start, int size, int points, int merged,
+                  boolean changed, int depth) {
+        if (start != 0) {
+            long nanos = System.nanoTime() - start;
+            latency[direction.ordinal()][63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+        }
+        moves[direction.ordinal()]++;
+        if (!changed) {
+            noOpMoves++;
+        }
+        merges += merged;
+        mergesPerMove[Math.min(merged, MERGE_BUCKETS - 1)]++;
+        undoDepth = depth;
+
+        MoveEvent event = new MoveEvent();
+        if (event.shouldCommit()) {
+            event.direction = direction.name();
+            event.size = size;
+            event.points = points;
+            event.merges = merged;
+            event.changed = changed;
+            event.commit();
+        }
+    }
+
+    void spawned() {
+        spawns++;
+    }
+
+    void undone(int depth) {
+        undos++;
+        undoDepth = depth;
+    }
+
+    /**
+     * Called after a save or a resume.
+     * @param start System.nanoTime() from before it started
+     */
+    void saveDone(String file, int slot, boolean resume, long start) {
+        long nanos = System.nanoTime() - start;
+        if (resume) {
+            resumes++;
+            resumeNanos += nanos;
+            resumeNanosMax = Math.max(resumeNanosMax, nanos);
+        } else {
+            saves++;
+            saveNanos += nanos;
+            saveNanosMax = Math.max(saveNanosMax, nanos);
+        }
+
+        SaveEvent event = new SaveEvent();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.slot = slot;
+            event.resume = resume;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Makes the counters visible over JMX as org.cis120.twentyfortyeight:type=GameMetrics with
+     * the given name.
+     * @param name name that tells this game or group of games apart
+     * @throws JMException if a GameMetrics with the same name is already registered
+     */
+    public synchronized void register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("org.cis120.twentyfortyeight:type=GameMetrics,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registered = objectName;
+    }
+
+    /**
+     * Removes the counters from JMX, if they were registered.
+     * @throws JMException if the platform MBean server refuses
+     */
+    public synchronized void unregister() throws JMException {
+        if (registered != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            registered = null;
+        }
+    }
+
+    @Override
+    public long getMoves() {
+        long total = 0;
+        for (long count : moves) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public long[] getMovesByDirection() {
+        return moves.clone();
+    }
+
+    @Override
+    public long getNoOpMoves() {
+        return noOpMoves;
+    }
+
+    @Override
+    public long getSpawns() {
+        return spawns;
+    }
+
+    @Override
+    public long getMerges() {
+        return merges;
+    }
+
+    @Override
+    public long[] getMergesPerMove() {
+        return mergesPerMove.clone();
+    }
+
+    @Override
+    public long getUndos() {
+        return undos;
+    }
+
+    @Override
+    public int getUndoDepth() {
+        return undoDepth;
+    }
+
+    @Override
+    public long getSaves() {
+        return saves;
+    }
+
+    @Override
+    public long getSaveNanosTotal() {
+        return saveNanos;
+    }
+
+    @Override
+    public long getSaveNanosMax() {
+        return saveNanosMax;
+    }
+
+    @Override
+    public long getResumes() {
+        return resumes;
+    }
+
+    @Override
+    public long getResumeNanosTotal() {
+        return resumeNanos;
+    }
+
+    @Override
+    public long getResumeNanosMax() {
+        return resumeNanosMax;
+    }
+
+    @Override
+    public long getMoveLatencyP50Nanos() {
+        return moveLatencyPercentile(null, 50);
+    }
+
+    @Override
+    public long getMoveLatencyP99Nanos() {
+        return moveLatencyPercentile(null, 99);
+    }
+
+    /**
+     * Getter for a percentile of the timed moves
+     * @param direction name of a Direction, or null for every direction
+     * @param p percentile from 0 to 100
+     * @return upper bound of the latency in nanoseconds, or 0 if no move was timed
+     */
+    @Override
+    public long moveLatencyPercentile(String direction, double p) {
+        long[] counts = new long[LATENCY_BUCKETS];
+        for (Direction d : Direction.values()) {
+            if (direction == null || d.name().equals(direction)) {
+                for (int b = 0; b < LATENCY_BUCKETS; b++) {
+                    counts[b] += latency[d.ordinal()][b];
+                }
+            }
+        }
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+        long seen = 0;
+        for (int b = 0; b < LATENCY_BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return b >= 62 ? Long.MAX_VALUE : (2L << b) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
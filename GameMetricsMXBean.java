@@ -0,0 +1,41 @@
+package org.cis120.twentyfortyeight;
+
+/**
+ * The counters of a GameMetrics as seen over JMX.
+ */
+public interface GameMetricsMXBean {
+
+    long getMoves();
+
+    long[] getMovesByDirection();
+
+    long getNoOpMoves();
+
+    long getSpawns();
+
+    long getMerges();
+
+    long[] getMergesPerMove();
+
+    long getUndos();
+
+    int getUndoDepth();
+
+    long getSaves();
+
+    long getSaveNanosTotal();
+
+    long getSaveNanosMax();
+
+    long getResumes();
+
+    long getResumeNanosTotal();
+
+    long getResumeNanosMax();
+
+    long getMoveLatencyP50Nanos();
+
+    long getMoveLatencyP99Nanos();
+
+    long moveLatencyPercentile(String direction, double p);
+}
@@ -0,0 +1,136 @@
+package org.cis120.twentyfortyeight;
+
+/**
+ * The state of a game at one moment, published by the model thread for the Swing thread to
+ * render. Nothing in it changes after it is made, so it can be handed between threads freely.
+ */
+public class GameSnapshot {
+
+    private final int size;
+    private final byte[] exponents;
+    private final int currScore;
+    private final int highestScore;
+    private final boolean gameOver;
+    private final boolean won;
+    private final int undoSize;
+    private final MoveDelta lastMove;
+    private final long sequence;
+    private final long inputNanos;
+
+    /**
+     * Captures the current state of a game.
+     * @param game game to copy
+     * @param lastMove the move that led to this state, or null if it was another command
+     * @param sequence number of commands applied so far
+     * @param inputNanos System.nanoTime() of when the oldest command behind this state was queued
+     */
+    GameSnapshot(TwentyFortyEight game, MoveDelta lastMove, long sequence, long inputNanos) {
+        size = game.getSize();
+        exponents = new byte[size * size];
+        game.copyExponents(exponents);
+        currScore = game.getCurrScore();
+        highestScore = game.getHighestScore();
+        gameOver = game.isGameOver();
+        won = game.hasWon();
+        undoSize = game.getUndoSize();
+        this.lastMove = lastMove;
+        this.sequence = sequence;
+        this.inputNanos = inputNanos;
+    }
+
+    /**
+     * Getter for the number of cells in a row
+     * @return size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Copies the exponents of the board, row after row.
+     * @param out receives size * size exponents
+     */
+    public void copyExponents(byte[] out) {
+        System.arraycopy(exponents, 0, out, 0, exponents.length);
+    }
+
+    /**
+     * Packs a 4x4 board into a long.
+     * @return packed board, see BitBoard
+     * @throws IllegalStateException if the board is not 4x4
+     */
+    public long getBits() {
+        if (size != BitBoard.SIZE) {
+            throw new IllegalStateException("Only a 4x4 board can be packed");
+        }
+        long bits = 0;
+        for (int i = 0; i < exponents.length; i++) {
+            bits |= (long) exponents[i] << (i << 2);
+        }
+        return bits;
+    }
+
+    /**
+     * Getter for the current score
+     * @return score
+     */
+    public int getCurrScore() {
+        return currScore;
+    }
+
+    /**
+     * Getter for the highest score
+     * @return highest score
+     */
+    public int getHighestScore() {
+        return highestScore;
+    }
+
+    /**
+     * Getter for whether the game is over
+     * @return true if no move is left
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Getter for whether the game is won
+     * @return true if the 2048 tile was reached
+     */
+    public boolean hasWon() {
+        return won;
+    }
+
+    /**
+     * Getter for the number of moves that can be undone
+     * @return undo depth available
+     */
+    public int getUndoSize() {
+        return undoSize;
+    }
+
+    /**
+     * Getter for the move that led to this state
+     * @return the delta to animate, or null if the last command was not a move
+     */
+    public MoveDelta getLastMove() {
+        return lastMove;
+    }
+
+    /**
+     * Getter for the number of commands applied to reach this state
+     * @return commands applied since the model thread started
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Getter for when the oldest command behind this state was queued
+     * @return System.nanoTime() of the input
+     */
+    public long getInputNanos() {
+        return inputNanos;
+    }
+}
@@ -0,0 +1,340 @@
+package org.cis120.twentyfortyeight;
+
+/**
+ * A square board of any size from MIN_SIZE to MAX_SIZE, for games that do not fit in a BitBoard.
+ *
+ * Cells are a flat byte array of log2 exponents (0 for empty), cell (row, col) at index
+ * row * size + col. A move walks each row or column once through a start index and a stride, so
+ * the same loop serves all four directions without copying or transposing the board.
+ *
+ * The empty cells are kept as one bit mask per row, updated whenever a cell turns empty or full.
+ * Counting them is constant time, and picking the k-th one for a new tile takes a bit count per
+ * row instead of a scan of every cell. The k-th empty cell in row order only depends on the board,
+ * so a reloaded or replayed game spawns the same tiles as the original.
+ */
+public class GridBoard {
+
+    public static final int MIN_SIZE = 3;
+    public static final int MAX_SIZE = 16;
+    // Two tiles of this exponent (2^30) no longer merge, which keeps every score in an int
+    public static final int MAX_EXPONENT = 30;
+
+    private final int size;
+    private final byte[] cells;
+    // Bit col of emptyRows[row] is set when the cell (row, col) is empty
+    private final int[] emptyRows;
+    private int freeCount;
+    // Moves and spawns never lower the highest tile, so it only has to be raised in set()
+    private int maxExponent;
+    // Exponents of the line being moved, reused by every move
+    private final int[] line;
+    private final int[] lineCells;
+    private boolean moved;
+    private int slideCount;
+
+    /**
+     * Creates an empty board.
+     * @param size number of cells in a row
+     */
+    public GridBoard(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be from " + MIN_SIZE + " to "
+                    + MAX_SIZE);
+        }
+        this.size = size;
+        cells = new byte[size * size];
+        emptyRows = new int[size];
+        line = new int[size];
+        lineCells = new int[size];
+        clear();
+    }
+
+    /**
+     * Converts a tile value into its exponent, allowing tiles up to 2^MAX_EXPONENT.
+     * @param value 0 or a power of two from 2 up
+     * @return log2 of the value, 0 for an empty cell
+     */
+    public static int toExponent(int value) {
+        if (value == 0) {
+            return 0;
+        }
+        int exponent = Integer.numberOfTrailingZeros(value);
+        if (value < 0 || Integer.bitCount(value) != 1 || exponent == 0
+                || exponent > MAX_EXPONENT) {
+            throw new IllegalArgumentException("Not a valid tile value: " + value);
+        }
+        return exponent;
+    }
+
+    /**
+     * Getter for the number of cells in a row
+     * @return size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Getter for the exponent of one cell
+     * @param cell index row * size + col
+     * @return log2 of the tile value, or 0 if the cell is empty
+     */
+    public int getExponent(int cell) {
+        return cells[cell];
+    }
+
+    /**
+     * Getter for the exponent of one cell
+     * @return log2 of the tile value, or 0 if the cell is empty
+     */
+    public int getExponent(int row, int col) {
+        return cells[row * size + col];
+    }
+
+    /**
+     * Sets one cell, keeping the list of empty cells and the highest tile up to date.
+     */
+    private void set(int cell, int exponent) {
+        if (exponent > maxExponent) {
+            maxExponent = exponent;
+        }
+        boolean wasEmpty = cells[cell] == 0;
+        cells[cell] = (byte) exponent;
+        if (wasEmpty && exponent != 0) {
+            emptyRows[cell / size] &= ~(1 << (cell % size));
+            freeCount--;
+        } else if (!wasEmpty && exponent == 0) {
+            emptyRows[cell / size] |= 1 << (cell % size);
+            freeCount++;
+        }
+    }
+
+    /**
+     * Empties every cell.
+     */
+    public void clear() {
+        for (int k = 0; k < cells.length; k++) {
+            cells[k] = 0;
+        }
+        for (int row = 0; row < size; row++) {
+            emptyRows[row] = (1 << size) - 1;
+        }
+        freeCount = cells.length;
+        maxExponent = 0;
+    }
+
+    /**
+     * Copies the cells of the board into an array.
+     * @param out receives size * size exponents
+     */
+    public void copyTo(byte[] out) {
+        System.arraycopy(cells, 0, out, 0, cells.length);
+    }
+
+    /**
+     * Replaces every cell with the given exponents.
+     * @param exponents size * size exponents, row after row
+     */
+    public void copyFrom(byte[] exponents) {
+        clear();
+        for (int k = 0; k < cells.length; k++) {
+            if (exponents[k] < 0 || exponents[k] > MAX_EXPONENT) {
+                throw new IllegalArgumentException("Not a valid exponent: " + exponents[k]);
+            }
+            if (exponents[k] != 0) {
+                set(k, exponents[k]);
+            }
+        }
+    }
+
+    /**
+     * Getter for the number of empty cells
+     * @return empty cells, kept up to date by every change
+     */
+    public int emptyCount() {
+        return freeCount;
+    }
+
+    /**
+     * Puts a new 2 or 4 on a random empty cell, the k-th one in row order for a random k like
+     * BitBoard.selectCell(). Only the row masks are looked at, never the cells.
+     * @param spawner source of randomness
+     * @return the cell of the new tile, or -1 if the board is full
+     */
+    public int spawn(TileSpawner spawner) {
+        if (freeCount == 0) {
+            return -1;
+        }
+        int k = spawner.nextInt(freeCount);
+        int row = 0;
+        while (k >= Integer.bitCount(emptyRows[row])) {
+            k -= Integer.bitCount(emptyRows[row]);
+            row++;
+        }
+        int mask = emptyRows[row];
+        for (; k > 0; k--) {
+            mask &= mask - 1;
+        }
+        int cell = row * size + Integer.numberOfTrailingZeros(mask);
+        set(cell, spawner.nextExponent());
+        return cell;
+    }
+
+    /**
+     * Shifts the board in a direction. Tiles slide over empty cells and each pair of equal
+     * neighbours merges once, starting from the side the tiles move toward.
+     * @param direction where the tiles go
+     * @param slides if not null, receives one packed entry per tile that slid or merged, see
+     *               MoveDelta; it needs room for size * size entries
+     * @return points earned by the move, the number of slides is returned by slideCount()
+     */
+    public int move(Direction direction, int[] slides) {
+        int score = 0;
+        int count = 0;
+        moved = false;
+        for (int l = 0; l < size; l++) {
+            int start;
+            int step;
+            switch (direction) {
+                case LEFT: start = l * size; step = 1; break;
+                case RIGHT: start = l * size + size - 1; step = -1; break;
+                case UP: start = l; step = size; break;
+                default: start = (size - 1) * size + l; step = -size; break;
+            }
+            // Collect the line's tiles in the order they move in
+            int tiles = 0;
+            for (int p = 0, cell = start; p < size; p++, cell += step) {
+                if (cells[cell] != 0) {
+                    line[tiles] = cells[cell];
+                    lineCells[tiles++] = cell;
+                }
+            }
+            int target = 0;
+            for (int t = 0; t < tiles; t++) {
+                int exponent = line[t];
+                int destination = start + target * step;
+                if (t + 1 < tiles && line[t + 1] == exponent && exponent < MAX_EXPONENT) {
+                    score += 1 << (exponent + 1);
+                    set(destination, exponent + 1);
+                    if (slides != null) {
+                        slides[count++] = MoveDelta.pack(lineCells[t], destination, exponent, true);
+                        slides[count++] = MoveDelta.pack(lineCells[t + 1], destination, exponent,
+                                true);
+                    }
+                    moved = true;
+                    t++;
+                } else {
+                    set(destination, exponent);
+                    if (lineCells[t] != destination) {
+                        moved = true;
+                        if (slides != null) {
+                            slides[count++] = MoveDelta.pack(lineCells[t], destination, exponent,
+                                    false);
+                        }
+                    }
+                }
+                target++;
+            }
+            for (int p = target, cell = start + target * step; p < size; p++, cell += step) {
+                set(cell, 0);
+            }
+        }
+        slideCount = count;
+        return score;
+    }
+
+    /**
+     * Checks if a move would change the board, without making it: some tile has an empty cell
+     * ahead of it or an equal tile next to it, empty cells in between aside.
+     * @param direction where the tiles would go
+     * @return true if some tile would slide or merge
+     */
+    public boolean canMove(Direction direction) {
+        for (int l = 0; l < size; l++) {
+            int start;
+            int step;
+            switch (direction) {
+                case LEFT: start = l * size; step = 1; break;
+                case RIGHT: start = l * size + size - 1; step = -1; break;
+                case UP: start = l; step = size; break;
+                default: start = (size - 1) * size + l; step = -size; break;
+            }
+            boolean gap = false;
+            int previous = 0;
+            for (int p = 0, cell = start; p < size; p++, cell += step) {
+                int exponent = cells[cell];
+                if (exponent == 0) {
+                    gap = true;
+                } else if (gap || (exponent == previous && exponent < MAX_EXPONENT)) {
+                    return true;
+                } else {
+                    previous = exponent;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The moves that would change the board.
+     * @return bit d set when the direction with ordinal d is legal, 0 if no move is left
+     */
+    public int legalMoves() {
+        int moves = 0;
+        for (int d = 0; d < 4; d++) {
+            if (canMove(Direction.of(d))) {
+                moves |= 1 << d;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Getter for the number of slides written by the last move
+     * @return slides recorded
+     */
+    public int slideCount() {
+        return slideCount;
+    }
+
+    /**
+     * Whether the last move changed the board
+     * @return true if a tile slid or merged
+     */
+    public boolean lastMoveChanged() {
+        return moved;
+    }
+
+    /**
+     * Getter for the largest exponent on the board
+     * @return log2 of the highest tile, or 0 for an empty board
+     */
+    public int maxExponent() {
+        return maxExponent;
+    }
+
+    /**
+     * Counts the pairs of neighbouring cells, in a row or in a column, that hold the same
+     * non-empty tile.
+     * @return number of mergeable pairs
+     */
+    public int mergeablePairs() {
+        int pairs = 0;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int cell = row * size + col;
+                int exponent = cells[cell];
+                if (exponent == 0) {
+                    continue;
+                }
+                if (col + 1 < size && cells[cell + 1] == exponent) {
+                    pairs++;
+                }
+                if (row + 1 < size && cells[cell + size] == exponent) {
+                    pairs++;
+                }
+            }
+        }
+        return pairs;
+    }
+}
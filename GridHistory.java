@@ -0,0 +1,184 @@
+package org.cis120.twentyfortyeight;
+
+import java.util.Arrays;
+
+/**
+ * Undo history for GridBoard games, the counterpart of UndoHistory for boards that do not fit in
+ * a long.
+ *
+ * Boards are copied into one flat byte array used as a ring buffer, next to primitive arrays of
+ * scores, running best scores and move counts, so push and pop copy one board. The arrays start
+ * small and double in size whenever they are full, up to the depth, or without limit with
+ * UNLIMITED depth.
+ */
+public class GridHistory {
+
+    public static final int UNLIMITED = UndoHistory.UNLIMITED;
+
+    private static final int INITIAL_SLOTS = 16;
+
+    private final int capacity;
+    private final int cells;
+    private byte[] boards;
+    private int[] scores;
+    private int[] bestScores;
+    private int[] moveCounts;
+    private int slots;
+    private int head;
+    private int size;
+
+    /**
+     * Creates an empty history.
+     * @param capacity how many entries are kept, or UNLIMITED to keep every entry
+     * @param cells number of cells of a board
+     */
+    public GridHistory(int capacity, int cells) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.capacity = capacity;
+        this.cells = cells;
+        slots = capacity == UNLIMITED ? INITIAL_SLOTS : Math.min(capacity, INITIAL_SLOTS);
+        boards = new byte[slots * cells];
+        scores = new int[slots];
+        bestScores = new int[slots];
+        moveCounts = new int[slots];
+    }
+
+    /**
+     * Getter for the number of entries currently kept
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for the score on top of the history
+     * @return score of the newest entry
+     */
+    public int score() {
+        return size == 0 ? 0 : scores[head];
+    }
+
+    /**
+     * Getter for the move count on top of the history
+     * @return moves made to reach the board of the newest entry
+     */
+    public int moves() {
+        return size == 0 ? 0 : moveCounts[head];
+    }
+
+    /**
+     * Getter for the best score of every entry that has not been undone, including entries
+     * that no longer fit in the history
+     * @return best score, or 0 for an empty history
+     */
+    public int bestScore() {
+        return size == 0 ? 0 : bestScores[head];
+    }
+
+    /**
+     * Copies the board on top of the history.
+     * @param out receives the exponents of the newest entry
+     */
+    public void copyTop(byte[] out) {
+        System.arraycopy(boards, head * cells, out, 0, cells);
+    }
+
+    /**
+     * Adds a new entry on top.
+     * @param board exponents of the board, row after row
+     * @param score score that goes with the board
+     * @param moves moves made to reach the board
+     */
+    public void push(byte[] board, int score, int moves) {
+        push(board, 0, score, moves);
+    }
+
+    /**
+     * Adds a new entry on top, taken from an array holding several boards.
+     * @param source exponents of boards, one after another
+     * @param offset index of the first cell of the board to add
+     * @param score score that goes with the board
+     * @param moves moves made to reach the board
+     */
+    public void push(byte[] source, int offset, int score, int moves) {
+        int best = size == 0 ? score : Math.max(bestScores[head], score);
+        if (size == slots && (capacity == UNLIMITED || size < capacity)) {
+            // Not full yet, so the entries are in order from index 0 to head
+            slots = capacity == UNLIMITED ? slots * 2 : Math.min(capacity, slots * 2);
+            boards = Arrays.copyOf(boards, slots * cells);
+            scores = Arrays.copyOf(scores, slots);
+            bestScores = Arrays.copyOf(bestScores, slots);
+            moveCounts = Arrays.copyOf(moveCounts, slots);
+        }
+        head = size == 0 ? 0 : (head + 1) % slots;
+        System.arraycopy(source, offset, boards, head * cells, cells);
+        scores[head] = score;
+        bestScores[head] = best;
+        moveCounts[head] = moves;
+        if (size < slots) {
+            size++;
+        }
+    }
+
+    /**
+     * Removes the top entry, unless it is the only one left.
+     * @return true if an entry was removed
+     */
+    public boolean pop() {
+        if (size <= 1) {
+            return false;
+        }
+        size--;
+        head = (head - 1 + slots) % slots;
+        return true;
+    }
+
+    /**
+     * Copies the newest entries, oldest first, for example to save them.
+     * @param outBoards receives max * cells exponents, one board after another
+     * @param outScores receives the scores
+     * @param outMoves receives the move counts
+     * @param max largest number of entries to copy
+     * @return number of entries copied
+     */
+    public int copyNewest(byte[] outBoards, int[] outScores, int[] outMoves, int max) {
+        int count = Math.min(size, max);
+        for (int i = 0; i < count; i++) {
+            int slot = (head - count + 1 + i + slots) % slots;
+            System.arraycopy(boards, slot * cells, outBoards, i * cells, cells);
+            outScores[i] = scores[slot];
+            outMoves[i] = moveCounts[slot];
+        }
+        return count;
+    }
+
+    /**
+     * Removes every entry and starts over from a single one.
+     * @param board exponents of the board
+     * @param score score that goes with the board
+     * @param moves moves made to reach the board
+     * @param bestScore best score to remember from before this entry
+     */
+    public void reset(byte[] board, int score, int moves, int bestScore) {
+        reset(board, 0, score, moves, bestScore);
+    }
+
+    /**
+     * Removes every entry and starts over from a single one taken from an array holding several
+     * boards.
+     * @param source exponents of boards, one after another
+     * @param offset index of the first cell of the board to keep
+     * @param score score that goes with the board
+     * @param moves moves made to reach the board
+     * @param bestScore best score to remember from before this entry
+     */
+    public void reset(byte[] source, int offset, int score, int moves, int bestScore) {
+        size = 0;
+        head = 0;
+        push(source, offset, score, moves);
+        bestScores[head] = Math.max(score, bestScore);
+    }
+}
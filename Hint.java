@@ -0,0 +1,59 @@
+package org.cis120.twentyfortyeight;
+
+import org.cis120.twentyfortyeight.ai.SearchResult;
+
+/**
+ * A suggested move for one snapshot of a game, from one iteration of a HintService search.
+ * Deeper iterations of the same search follow with better hints until one is done.
+ */
+public class Hint {
+    private final long sequence;
+    private final SearchResult result;
+    private final boolean done;
+
+    Hint(long sequence, SearchResult result, boolean done) {
+        this.sequence = sequence;
+        this.result = result;
+        this.done = done;
+    }
+
+    /**
+     * Getter for the snapshot the hint is for
+     * @return GameSnapshot.getSequence() of the snapshot
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Getter for the suggested move
+     * @return best direction found, or null if no move changes the board
+     */
+    public Direction getMove() {
+        return result.getMove();
+    }
+
+    /**
+     * Getter for how far ahead the search looked
+     * @return depth in moves
+     */
+    public int getDepth() {
+        return result.getDepth();
+    }
+
+    /**
+     * Getter for the search behind the hint
+     * @return result of the iteration
+     */
+    public SearchResult getResult() {
+        return result;
+    }
+
+    /**
+     * Checks if this is the last hint of its search.
+     * @return true if the search finished, ran out of time or could not go deeper
+     */
+    public boolean isDone() {
+        return done;
+    }
+}
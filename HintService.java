@@ -0,0 +1,122 @@
+package org.cis120.twentyfortyeight;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.cis120.twentyfortyeight.ai.Expectimax;
+import org.cis120.twentyfortyeight.ai.SearchResult;
+import org.cis120.twentyfortyeight.ai.TranspositionTable;
+
+/**
+ * Searches for the best move of a GameSnapshot on a thread of its own, so whoever asks never
+ * waits for the search.
+ *
+ * The search deepens one move at a time within a time budget, and the listener gets a Hint after
+ * every depth it finishes, the last one marked as done. Only one search runs at a time: a new
+ * request, or cancel(), interrupts the one before it, which then stops within a few thousand
+ * nodes. Hints can still arrive for a snapshot after its search was replaced, so listeners should
+ * check Hint.getSequence().
+ *
+ * Searches work on packed boards, so only 4x4 games get hints.
+ */
+public class HintService {
+
+    public static final long DEFAULT_BUDGET_MILLIS = 250;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "2048-hint");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final TranspositionTable table = new TranspositionTable();
+    // Only used by the executor's thread
+    private final Expectimax search = new Expectimax(Expectimax.DEFAULT_MAX_DEPTH, table);
+    private final Consumer<Hint> listener;
+    private volatile long budgetMillis;
+    // The search that is running or queued, guarded by this
+    private Future<?> running;
+    // Size of the board of the last request, guarded by this
+    private int lastSize;
+
+    /**
+     * Sets up the search thread.
+     * @param budgetMillis how long one search may take
+     * @param listener receives every hint, on the search thread
+     */
+    public HintService(long budgetMillis, Consumer<Hint> listener) {
+        setBudgetMillis(budgetMillis);
+        this.listener = listener;
+    }
+
+    /**
+     * Starts searching a snapshot, stopping the search before it.
+     * @param snapshot state of the game to find a move for
+     * @return false if the game is over, won or not 4x4, and nothing is searched
+     */
+    public synchronized boolean request(GameSnapshot snapshot) {
+        cancel();
+        // A board with no score yet, or of another size, is a new game, whose searches have
+        // little use for the entries of the last one
+        if (snapshot.getCurrScore() == 0 || snapshot.getSize() != lastSize) {
+            table.newGeneration();
+        }
+        lastSize = snapshot.getSize();
+        if (snapshot.getSize() != BitBoard.SIZE || snapshot.isGameOver() || snapshot.hasWon()) {
+            return false;
+        }
+        long board = snapshot.getBits();
+        long sequence = snapshot.getSequence();
+        long budget = budgetMillis;
+        running = executor.submit(() -> {
+            SearchResult result = search.bestMove(board, budget, iteration -> {
+                if (!Thread.currentThread().isInterrupted()) {
+                    listener.accept(new Hint(sequence, iteration, false));
+                }
+            });
+            if (!Thread.currentThread().isInterrupted()) {
+                listener.accept(new Hint(sequence, result, true));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Stops the current search, if there is one. No more hints are sent for it unless one was
+     * already on its way.
+     */
+    public synchronized void cancel() {
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+
+    /**
+     * Setter for the time budget of searches started from now on
+     * @param budgetMillis how long one search may take, at least 1
+     */
+    public void setBudgetMillis(long budgetMillis) {
+        if (budgetMillis < 1) {
+            throw new IllegalArgumentException("Budget must be at least 1 ms");
+        }
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * Getter for the time budget of a search
+     * @return budget in milliseconds
+     */
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * Stops the current search and the search thread.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+}
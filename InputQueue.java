@@ -0,0 +1,121 @@
+package org.cis120.twentyfortyeight;
+
+/**
+ * A bounded first-in first-out queue of commands from the Swing thread to the model thread.
+ *
+ * Commands are ints (see GameLoop) kept in a ring along with the time they were queued. Every key
+ * press is queued in order and never merged with another. Auto-repeat events of a held key are
+ * coalesced instead: while a repeat of the same command is still waiting at the tail, more
+ * repeats are dropped, so holding a key while the model is behind queues one extra move rather
+ * than a burst of them. A command that does not fit in a full queue is refused and counted.
+ */
+class InputQueue {
+
+    private final int[] commands;
+    private final long[] times;
+    private final boolean[] repeats;
+    private int head;
+    private int count;
+    private boolean closed;
+
+    private long coalesced;
+    private long rejected;
+
+    InputQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        commands = new int[capacity];
+        times = new long[capacity];
+        repeats = new boolean[capacity];
+    }
+
+    /**
+     * Queues a command without waiting.
+     * @param command command code
+     * @param repeat whether the command comes from the auto-repeat of a held key
+     * @return false if the queue was full or closed and the command was refused
+     */
+    synchronized boolean offer(int command, boolean repeat) {
+        if (closed) {
+            return false;
+        }
+        if (repeat && count > 0) {
+            int tail = (head + count - 1) % commands.length;
+            if (repeats[tail] && commands[tail] == command) {
+                coalesced++;
+                return true;
+            }
+        }
+        if (count == commands.length) {
+            rejected++;
+            return false;
+        }
+        int tail = (head + count) % commands.length;
+        commands[tail] = command;
+        times[tail] = System.nanoTime();
+        repeats[tail] = repeat;
+        count++;
+        if (count == 1) {
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Waits for at least one command and takes every command queued, oldest first.
+     * @param outCommands receives the commands, needs room for the capacity of the queue
+     * @param outTimes receives System.nanoTime() of when each command was queued
+     * @return number of commands taken, or -1 once the queue is closed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    synchronized int takeAll(int[] outCommands, long[] outTimes) throws InterruptedException {
+        while (count == 0 && !closed) {
+            wait();
+        }
+        if (count == 0) {
+            return -1;
+        }
+        int taken = count;
+        for (int i = 0; i < taken; i++) {
+            int k = (head + i) % commands.length;
+            outCommands[i] = commands[k];
+            outTimes[i] = times[k];
+        }
+        head = (head + taken) % commands.length;
+        count = 0;
+        return taken;
+    }
+
+    /**
+     * Refuses every command from now on. Commands already queued are still taken.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Getter for the capacity of the queue
+     * @return most commands waiting at once
+     */
+    int capacity() {
+        return commands.length;
+    }
+
+    /**
+     * Getter for the number of auto-repeat events dropped because one was already waiting
+     * @return repeats coalesced so far
+     */
+    synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Getter for the number of commands refused because the queue was full
+     * @return commands refused so far
+     */
+    synchronized long getRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,306 @@
+package org.cis120.twentyfortyeight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a journal written by MoveJournal and replays it through the move engine.
+ *
+ * Opening a journal decodes every step into one byte each and collects its checkpoints, which
+ * form the seek index: the state after any step is found by starting from the last checkpoint at
+ * or before it and replaying the steps in between, so jumping into the middle of a long game never
+ * replays more than MoveJournal.CHECKPOINT_INTERVAL steps. The only exception is an undo that goes
+ * back past a small checkpoint, which holds the current board but not the undo history; the replay
+ * then starts again from an earlier checkpoint.
+ */
+public class JournalReplay {
+
+    // Step codes: 0 to 3 are moves in the direction with that ordinal
+    private static final byte STEP_UNDO = 4;
+    private static final byte STEP_RESET = 5;
+    private static final byte STEP_SPAWN = 6;
+    private static final byte STEP_RESTART = 7;
+
+    private byte[] steps = new byte[1024];
+    private int stepCount;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private long validLength;
+    private boolean truncated;
+
+    /**
+     * A state of the game saved in the journal.
+     */
+    private static class Checkpoint {
+        int step;
+        int size;
+        int undoDepth;
+        long spawnerState;
+        int score;
+        int highScore;
+        boolean complete;
+        int count;
+        byte[] boards;
+        int[] scores;
+        int[] moves;
+    }
+
+    private JournalReplay() {
+    }
+
+    /**
+     * Reads a journal. Batches after the first one that is cut short or fails its CRC are
+     * ignored.
+     * @param path location of the journal
+     * @return the decoded journal
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public static JournalReplay open(Path path) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (data.remaining() < MoveJournal.HEADER_SIZE || data.getInt() != MoveJournal.MAGIC) {
+            throw new IOException("Not a 2048 journal: " + path);
+        }
+        int version = data.getInt();
+        if (version != MoveJournal.VERSION) {
+            throw new IOException("Unsupported journal version " + version);
+        }
+        JournalReplay replay = new JournalReplay();
+        CRC32 crc = new CRC32();
+        replay.validLength = data.position();
+        while (data.remaining() >= MoveJournal.BATCH_HEADER_SIZE) {
+            int length = data.getInt();
+            int expected = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(data.array(), data.position(), length);
+            if ((int) crc.getValue() != expected) {
+                break;
+            }
+            ByteBuffer batch = data.slice();
+            batch.limit(length);
+            replay.decodeBatch(batch);
+            data.position(data.position() + length);
+            replay.validLength = data.position();
+        }
+        replay.truncated = replay.validLength < data.limit();
+        if (replay.checkpoints.isEmpty()) {
+            throw new IOException("Journal has no starting state: " + path);
+        }
+        return replay;
+    }
+
+    private void decodeBatch(ByteBuffer batch) throws IOException {
+        while (batch.hasRemaining()) {
+            byte type = batch.get();
+            switch (type) {
+                case MoveJournal.MOVES:
+                    int count = batch.getShort() & 0xFFFF;
+                    int packed = 0;
+                    for (int i = 0; i < count; i++) {
+                        if ((i & 3) == 0) {
+                            packed = batch.get();
+                        }
+                        addStep((byte) ((packed >>> ((i & 3) << 1)) & 3));
+                    }
+                    break;
+                case MoveJournal.UNDO: addStep(STEP_UNDO); break;
+                case MoveJournal.RESET: addStep(STEP_RESET); break;
+                case MoveJournal.SPAWN: addStep(STEP_SPAWN); break;
+                case MoveJournal.RESTART:
+                    addStep(STEP_RESTART);
+                    checkpoints.add(decodeCheckpoint(batch));
+                    break;
+                case MoveJournal.CHECKPOINT:
+                    checkpoints.add(decodeCheckpoint(batch));
+                    break;
+                default:
+                    throw new IOException("Unknown journal record " + type);
+            }
+        }
+    }
+
+    private static Checkpoint decodeCheckpoint(ByteBuffer batch) {
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.step = batch.getInt();
+        checkpoint.size = batch.getInt();
+        checkpoint.undoDepth = batch.getInt();
+        checkpoint.spawnerState = batch.getLong();
+        checkpoint.score = batch.getInt();
+        checkpoint.highScore = batch.getInt();
+        checkpoint.complete = batch.get() != 0;
+        checkpoint.count = batch.getInt();
+        int area = checkpoint.size * checkpoint.size;
+        checkpoint.boards = new byte[checkpoint.count * area];
+        checkpoint.scores = new int[checkpoint.count];
+        checkpoint.moves = new int[checkpoint.count];
+        for (int i = 0; i < checkpoint.count; i++) {
+            batch.get(checkpoint.boards, i * area, area);
+            checkpoint.scores[i] = batch.getInt();
+            checkpoint.moves[i] = batch.getInt();
+        }
+        return checkpoint;
+    }
+
+    private void addStep(byte step) {
+        if (stepCount == steps.length) {
+            steps = Arrays.copyOf(steps, steps.length * 2);
+        }
+        steps[stepCount++] = step;
+    }
+
+    /**
+     * Getter for the number of steps in the journal
+     * @return moves, undos, resets, spawns and restarts recorded
+     */
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Counts the moves among the steps
+     * @return number of moves recorded
+     */
+    public int getMoveCount() {
+        int moves = 0;
+        for (int i = 0; i < stepCount; i++) {
+            if (steps[i] < STEP_UNDO) {
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Getter for a step that is a move
+     * @param step index of the step
+     * @return direction of the move, or null if the step is not a move
+     */
+    public Direction getMove(int step) {
+        return steps[step] < STEP_UNDO ? Direction.of(steps[step]) : null;
+    }
+
+    /**
+     * Getter for the length of the part of the file that was read, up to the end of the last
+     * good batch
+     * @return length in bytes
+     */
+    public long getValidLength() {
+        return validLength;
+    }
+
+    /**
+     * Whether the file ends with a batch that was cut short or is corrupted
+     * @return true if part of the file was ignored
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Replays the whole journal.
+     * @return a new game in the state after the last step
+     */
+    public TwentyFortyEight replay() {
+        return seek(stepCount);
+    }
+
+    /**
+     * Builds the game as it was after a number of steps. Board, scores and spawner match the
+     * recorded game; the undo history only goes back to the checkpoint the replay started from,
+     * unless that checkpoint holds the whole history.
+     * @param step number of steps to replay, from 0 to getStepCount()
+     * @return a new game in that state, not recorded by any journal
+     */
+    public TwentyFortyEight seek(int step) {
+        if (step < 0 || step > stepCount) {
+            throw new IllegalArgumentException("Step must be from 0 to " + stepCount);
+        }
+        int index = findCheckpoint(step);
+        while (true) {
+            TwentyFortyEight game = replayFrom(checkpoints.get(index), step);
+            if (game != null) {
+                return game;
+            }
+            index--;
+        }
+    }
+
+    /**
+     * Index of the last checkpoint at or before a step.
+     */
+    private int findCheckpoint(int step) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpoints.get(mid).step <= step) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Replays from a checkpoint up to a step.
+     * @return the game, or null if an undo went back past an incomplete checkpoint
+     */
+    private TwentyFortyEight replayFrom(Checkpoint start, int end) {
+        TwentyFortyEight game = new TwentyFortyEight(start.size, new TileSpawner(0));
+        restore(game, start);
+        int next = findCheckpoint(start.step) + 1;
+        for (int s = start.step; s < end; s++) {
+            byte code = steps[s];
+            if (code < STEP_UNDO) {
+                game.move(Direction.of(code));
+            } else if (code == STEP_UNDO) {
+                if (game.getUndoSize() == 0 && !start.complete) {
+                    return null;
+                }
+                game.undo();
+            } else if (code == STEP_RESET) {
+                game.reset();
+            } else if (code == STEP_SPAWN) {
+                game.generateNewTile();
+            } else {
+                // The checkpoint of a restart holds the state after it, so it becomes the start
+                while (checkpoints.get(next).step != s + 1) {
+                    next++;
+                }
+                start = checkpoints.get(next);
+                restore(game, start);
+            }
+        }
+        return game;
+    }
+
+    private static void restore(TwentyFortyEight game, Checkpoint checkpoint) {
+        game.setUndoDepth(checkpoint.undoDepth);
+        TileSpawner spawner = new TileSpawner(checkpoint.spawnerState);
+        int area = checkpoint.size * checkpoint.size;
+        byte[] current = Arrays.copyOfRange(checkpoint.boards, (checkpoint.count - 1) * area,
+                checkpoint.count * area);
+        if (checkpoint.size == BitBoard.SIZE) {
+            long[] boards = new long[checkpoint.count];
+            for (int i = 0; i < checkpoint.count; i++) {
+                for (int k = 0; k < area; k++) {
+                    boards[i] |= (long) checkpoint.boards[i * area + k] << (k << 2);
+                }
+            }
+            game.restore(boards[checkpoint.count - 1], checkpoint.score, checkpoint.highScore,
+                    spawner, boards, checkpoint.scores, checkpoint.moves, checkpoint.count);
+        } else {
+            game.restore(checkpoint.size, current, checkpoint.score, checkpoint.highScore,
+                    spawner, checkpoint.boards, checkpoint.scores, checkpoint.moves,
+                    checkpoint.count);
+        }
+    }
+}
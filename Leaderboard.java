@@ -0,0 +1,309 @@
+package org.cis120.twentyfortyeight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Scores of finished games, kept in an append-only file and indexed in memory.
+ *
+ * Opening the file reads every record once to build the indexes:
+ *   - ScoreRanks counts games by score, for the rank of any score in logarithmic time
+ *   - the TOP_K best games overall and the TOP_K best games of every day, in TopScores
+ *   - the best score of every board size
+ * After that every query is answered from the indexes without touching the file.
+ *
+ * Any number of threads can record at once. Each record reserves its place in the file with an
+ * atomic add on the end offset and is written there with a positional write, and every index is
+ * updated with atomic operations or a concurrent collection, so writers never wait for each other
+ * on a lock. Writes reach the page cache; flush() and close() force them to the disk.
+ *
+ * File: magic, format version (ints), then RECORD_SIZE byte records: time in milliseconds since
+ * the epoch (long), score, moves (ints), highest exponent, board size (bytes), two zero bytes and
+ * the CRC32 of the first 20 bytes. A record whose CRC does not match, left by a crash between
+ * reserving its place and writing it, is skipped when the file is read.
+ */
+public class Leaderboard implements Closeable {
+
+    public static final int MAGIC = 0x32534352; // "2SCR"
+    public static final int VERSION = 1;
+    public static final int TOP_K = 100;
+
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 24;
+    private static final long MILLIS_PER_DAY = 86400000L;
+    // Records read at once when the file is opened
+    private static final int READ_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final AtomicLong end;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    private final ScoreRanks ranks = new ScoreRanks();
+    private final TopScores top = new TopScores(TOP_K);
+    private final AtomicIntegerArray bestBySize = new AtomicIntegerArray(GridBoard.MAX_SIZE + 1);
+    private final ConcurrentHashMap<Long, Day> days = new ConcurrentHashMap<>();
+    private final LongAdder games = new LongAdder();
+
+    /**
+     * Games of one day, in UTC.
+     */
+    private static class Day {
+        final LongAdder games = new LongAdder();
+        final TopScores top = new TopScores(TOP_K);
+    }
+
+    private Leaderboard(FileChannel channel, long end) {
+        this.channel = channel;
+        this.end = new AtomicLong(end);
+    }
+
+    /**
+     * Opens a leaderboard file, creating it if it does not exist, and indexes the games already
+     * in it.
+     * @param path location of the file
+     * @return the open leaderboard
+     * @throws IOException if the file cannot be read or is not a leaderboard
+     */
+    public static Leaderboard open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.size() < HEADER_SIZE) {
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                channel.write(header, 0);
+                return new Leaderboard(channel, HEADER_SIZE);
+            }
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a 2048 leaderboard: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported leaderboard version " + version);
+            }
+            // A record cut short at the end is overwritten by the next one
+            long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            Leaderboard leaderboard = new Leaderboard(channel, HEADER_SIZE + records * RECORD_SIZE);
+            leaderboard.load(records);
+            return leaderboard;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void load(long records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_RECORDS * RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        long index = 0;
+        while (index < records) {
+            buffer.clear();
+            buffer.limit((int) Math.min(READ_RECORDS, records - index) * RECORD_SIZE);
+            long position = HEADER_SIZE + index * RECORD_SIZE;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Leaderboard file shrank while reading");
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                crc.reset();
+                crc.update(buffer.array(), start, RECORD_SIZE - 4);
+                long time = buffer.getLong();
+                int score = buffer.getInt();
+                int moves = buffer.getInt();
+                int maxExponent = buffer.get();
+                int size = buffer.get();
+                buffer.getShort();
+                if (buffer.getInt() == (int) crc.getValue() && valid(score, moves, maxExponent,
+                        size)) {
+                    index(new ScoreEntry(time, score, moves, maxExponent, size, index));
+                }
+                index++;
+            }
+        }
+    }
+
+    private static boolean valid(int score, int moves, int maxExponent, int size) {
+        return score >= 0 && moves >= 0 && maxExponent >= 0
+                && maxExponent <= GridBoard.MAX_EXPONENT && size >= GridBoard.MIN_SIZE
+                && size <= GridBoard.MAX_SIZE;
+    }
+
+    private void index(ScoreEntry entry) {
+        ranks.add(entry.getScore());
+        top.add(entry);
+        bestBySize.accumulateAndGet(entry.getSize(), entry.getScore(), Math::max);
+        Day day = days.computeIfAbsent(Math.floorDiv(entry.getTime(), MILLIS_PER_DAY),
+                d -> new Day());
+        day.games.increment();
+        day.top.add(entry);
+        games.increment();
+    }
+
+    /**
+     * Records a finished game, timed now.
+     * @see #record(long, int, int, int, int)
+     */
+    public void record(int score, int moves, int maxExponent, int size) {
+        record(System.currentTimeMillis(), score, moves, maxExponent, size);
+    }
+
+    /**
+     * Records a finished game. The game counts in every query as soon as this returns. Writing
+     * the record never throws: a failed write is thrown by the next flush() or close().
+     * @param time when the game ended, in milliseconds since the epoch
+     * @param score final score
+     * @param moves number of moves, or 0 if not counted
+     * @param maxExponent log2 of the highest tile
+     * @param size number of cells in a row of the board
+     */
+    public void record(long time, int score, int moves, int maxExponent, int size) {
+        if (!valid(score, moves, maxExponent, size)) {
+            throw new IllegalArgumentException("Not a valid game: score " + score + ", moves "
+                    + moves + ", highest exponent " + maxExponent + ", size " + size);
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(time).putInt(score).putInt(moves).put((byte) maxExponent)
+                .put((byte) size).putShort((short) 0);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue()).flip();
+
+        long position = end.getAndAdd(RECORD_SIZE);
+        index(new ScoreEntry(time, score, moves, maxExponent, size,
+                (position - HEADER_SIZE) / RECORD_SIZE));
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Getter for the number of games recorded
+     * @return games in the file
+     */
+    public long getGameCount() {
+        return games.sum();
+    }
+
+    /**
+     * Getter for the best score of all games
+     * @return best score, or 0 if no game was recorded
+     */
+    public int bestScore() {
+        return top.best();
+    }
+
+    /**
+     * Getter for the best score on boards of one size
+     * @param size number of cells in a row
+     * @return best score, or 0 if no game of that size was recorded
+     */
+    public int bestScore(int size) {
+        if (size < GridBoard.MIN_SIZE || size > GridBoard.MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be from " + GridBoard.MIN_SIZE
+                    + " to " + GridBoard.MAX_SIZE);
+        }
+        return bestBySize.get(size);
+    }
+
+    /**
+     * The best games of all, best first, earlier games first among equal scores.
+     * @param n number of games, at most TOP_K
+     * @return up to n games
+     */
+    public List<ScoreEntry> top(int n) {
+        return top.top(checkCount(n));
+    }
+
+    /**
+     * Where a score would rank among all games recorded.
+     * @param score a score
+     * @return 1 plus the number of games that scored more
+     */
+    public long rank(int score) {
+        if (score < 0) {
+            throw new IllegalArgumentException("Score must not be negative");
+        }
+        return ranks.countAbove(score) + 1;
+    }
+
+    /**
+     * Getter for the number of games recorded on one day
+     * @param day a day in UTC
+     * @return games recorded that day
+     */
+    public long getGameCount(LocalDate day) {
+        Day d = days.get(day.toEpochDay());
+        return d == null ? 0 : d.games.sum();
+    }
+
+    /**
+     * Getter for the best score of one day
+     * @param day a day in UTC
+     * @return best score, or 0 if no game was recorded that day
+     */
+    public int bestScore(LocalDate day) {
+        Day d = days.get(day.toEpochDay());
+        return d == null ? 0 : d.top.best();
+    }
+
+    /**
+     * The best games of one day, best first.
+     * @param day a day in UTC
+     * @param n number of games, at most TOP_K
+     * @return up to n games
+     */
+    public List<ScoreEntry> top(LocalDate day, int n) {
+        checkCount(n);
+        Day d = days.get(day.toEpochDay());
+        return d == null ? List.of() : d.top.top(n);
+    }
+
+    private static int checkCount(int n) {
+        if (n < 0 || n > TOP_K) {
+            throw new IllegalArgumentException("Count must be from 0 to " + TOP_K);
+        }
+        return n;
+    }
+
+    /**
+     * Forces every game recorded so far to the disk.
+     * @throws IOException if this or an earlier write failed
+     */
+    public void flush() throws IOException {
+        IOException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
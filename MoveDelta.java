@@ -0,0 +1,206 @@
+package org.cis120.twentyfortyeight;
+
+import java.util.Arrays;
+
+/**
+ * What a single move did to the board, so the view can animate it.
+ *
+ * Every tile that slid or merged is one entry packing its source cell, its destination cell, its
+ * exponent before the move and whether it ended up in a merge. Cells are numbered
+ * gridSize * row + col. Tiles that stayed where they were are not listed, so the size of a delta
+ * grows with the number of tiles that moved. The delta also holds where the new tile appeared.
+ */
+public class MoveDelta {
+
+    private static final int CELL_BITS = 8;
+    private static final int CELL_MASK = 0xFF;
+    private static final int EXPONENT_SHIFT = 2 * CELL_BITS;
+    private static final int EXPONENT_MASK = 0x1F;
+    private static final int MERGED = 1 << (EXPONENT_SHIFT + 5);
+
+    private final Direction direction;
+    private final int gridSize;
+    private final int[] slides;
+    private final int count;
+    private final int spawnCell;
+    private final int spawnExponent;
+
+    private MoveDelta(Direction direction, int gridSize, int[] slides, int count, int spawnCell,
+                      int spawnExponent) {
+        this.direction = direction;
+        this.gridSize = gridSize;
+        this.slides = slides;
+        this.count = count;
+        this.spawnCell = spawnCell;
+        this.spawnExponent = spawnExponent;
+    }
+
+    /**
+     * Works out which tiles of a packed 4x4 board moved where.
+     * @param direction direction of the move
+     * @param before packed board before the move
+     * @param spawnCell cell of the new tile, or -1 if none appeared
+     * @param spawnExponent exponent of the new tile
+     * @return the delta of the move
+     */
+    public static MoveDelta of(Direction direction, long before, int spawnCell,
+                               int spawnExponent) {
+        int[] slides = new int[BitBoard.SIZE * BitBoard.SIZE];
+        int count = 0;
+        for (int line = 0; line < BitBoard.SIZE; line++) {
+            int target = 0;
+            int pendingCell = -1;
+            int pendingExponent = 0;
+            for (int position = 0; position < BitBoard.SIZE; position++) {
+                int cell = cellOf(direction, line, position);
+                int exponent = (int) (before >>> (cell << 2)) & 0xF;
+                if (exponent == 0) {
+                    continue;
+                }
+                if (exponent == pendingExponent && exponent < BitBoard.MAX_EXPONENT) {
+                    int destination = cellOf(direction, line, target);
+                    slides[count++] = pack(pendingCell, destination, exponent, true);
+                    slides[count++] = pack(cell, destination, exponent, true);
+                    target++;
+                    pendingCell = -1;
+                    pendingExponent = 0;
+                } else {
+                    if (pendingCell >= 0) {
+                        count = addSlide(slides, count, pendingCell,
+                                cellOf(direction, line, target), pendingExponent);
+                        target++;
+                    }
+                    pendingCell = cell;
+                    pendingExponent = exponent;
+                }
+            }
+            if (pendingCell >= 0) {
+                count = addSlide(slides, count, pendingCell, cellOf(direction, line, target),
+                        pendingExponent);
+            }
+        }
+        return new MoveDelta(direction, BitBoard.SIZE, slides, count, spawnCell, spawnExponent);
+    }
+
+    /**
+     * Wraps slides already recorded by a move, see GridBoard.move().
+     * @param direction direction of the move
+     * @param gridSize number of cells in a row
+     * @param slides packed slides, copied
+     * @param count number of slides
+     * @param spawnCell cell of the new tile, or -1 if none appeared
+     * @param spawnExponent exponent of the new tile
+     * @return the delta of the move
+     */
+    public static MoveDelta of(Direction direction, int gridSize, int[] slides, int count,
+                               int spawnCell, int spawnExponent) {
+        return new MoveDelta(direction, gridSize, Arrays.copyOf(slides, count), count, spawnCell,
+                spawnExponent);
+    }
+
+    private static int addSlide(int[] slides, int count, int source, int destination,
+                                int exponent) {
+        if (source != destination) {
+            slides[count++] = pack(source, destination, exponent, false);
+        }
+        return count;
+    }
+
+    /**
+     * Packs one slide into an int.
+     * @param source cell the tile came from
+     * @param destination cell the tile ended up in
+     * @param exponent exponent of the tile before the move
+     * @param merged whether the tile merged at its destination
+     * @return the packed slide
+     */
+    public static int pack(int source, int destination, int exponent, boolean merged) {
+        return source | destination << CELL_BITS | exponent << EXPONENT_SHIFT
+                | (merged ? MERGED : 0);
+    }
+
+    /**
+     * Cell at a position along a line, counting from the side the tiles move toward.
+     */
+    private static int cellOf(Direction direction, int line, int position) {
+        int last = BitBoard.SIZE - 1;
+        switch (direction) {
+            case LEFT: return line * BitBoard.SIZE + position;
+            case RIGHT: return line * BitBoard.SIZE + last - position;
+            case UP: return position * BitBoard.SIZE + line;
+            default: return (last - position) * BitBoard.SIZE + line;
+        }
+    }
+
+    /**
+     * Getter for the direction of the move
+     * @return direction
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Getter for the number of cells in a row of the board that moved
+     * @return gridSize
+     */
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Getter for the number of tiles that slid or merged
+     * @return count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Cell a moving tile came from
+     * @param i index of the tile, below size()
+     */
+    public int getSource(int i) {
+        return slides[i] & CELL_MASK;
+    }
+
+    /**
+     * Cell a moving tile ended up in
+     * @param i index of the tile, below size()
+     */
+    public int getDestination(int i) {
+        return (slides[i] >>> CELL_BITS) & CELL_MASK;
+    }
+
+    /**
+     * Exponent a moving tile had before the move
+     * @param i index of the tile, below size()
+     */
+    public int getExponent(int i) {
+        return (slides[i] >>> EXPONENT_SHIFT) & EXPONENT_MASK;
+    }
+
+    /**
+     * Whether a moving tile merged with another one at its destination
+     * @param i index of the tile, below size()
+     */
+    public boolean isMerged(int i) {
+        return (slides[i] & MERGED) != 0;
+    }
+
+    /**
+     * Getter for the cell of the new tile
+     * @return cell index, or -1 if no tile appeared
+     */
+    public int getSpawnCell() {
+        return spawnCell;
+    }
+
+    /**
+     * Getter for the exponent of the new tile
+     * @return 1 for a 2 or 2 for a 4
+     */
+    public int getSpawnExponent() {
+        return spawnExponent;
+    }
+}
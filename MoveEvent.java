@@ -0,0 +1,33 @@
+package org.cis120.twentyfortyeight;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one move of a game that has a GameMetrics attached.
+ */
+@Name("org.cis120.twentyfortyeight.Move")
+@Label("2048 Move")
+@Category("2048")
+@Description("A move made in a game")
+class MoveEvent extends Event {
+
+    @Label("Direction")
+    String direction;
+
+    @Label("Board Size")
+    int size;
+
+    @Label("Points")
+    int points;
+
+    @Label("Merges")
+    int merges;
+
+    @Label("Changed")
+    @Description("Whether any tile slid or merged")
+    boolean changed;
+}
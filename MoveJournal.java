@@ -0,0 +1,314 @@
+package org.cis120.twentyfortyeight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Records everything done to a game in an append-only file, so the game can be replayed exactly
+ * (see JournalReplay).
+ *
+ * Tiles come from the game's seeded TileSpawner, so a journal only needs the starting state and
+ * the player's actions: new tiles are worked out again during the replay. Moves are stored as runs
+ * of 2-bit directions, four to a byte. Undo, reset and a new tile spawned outside a move are one
+ * byte each. Anything else that replaces the state of the game, such as loading a save, changing
+ * the undo depth or the spawner, is stored as a full checkpoint of the state.
+ *
+ * Every CHECKPOINT_INTERVAL steps the journal also stores a small checkpoint of the current board,
+ * score and spawner, which JournalReplay uses as an index to start a replay in the middle of a
+ * long game.
+ *
+ * File: magic, format version (ints), then batches. Batch: payload length, CRC32 of the payload,
+ * then records. Record: a type byte followed by
+ *   MOVES: move count (unsigned short), then the directions, 2 bits each, lowest bits first
+ *   UNDO, RESET, SPAWN: nothing
+ *   CHECKPOINT, RESTART: step number, board size, undo depth (ints), spawner state (long), score,
+ *     high score (ints), 1 if the entries are the whole undo history or 0, entry count (int) and
+ *     that many (board as size * size exponent bytes, score, move count) entries, oldest first,
+ *     the last one being the current board. A RESTART is a step of its own, a CHECKPOINT is not.
+ *
+ * Records are kept in memory and written as one batch every BATCH_STEPS steps, on flush() and on
+ * close(). A batch that was cut short by a crash fails its CRC and is dropped when the journal is
+ * read back, so at most the last batch is lost.
+ */
+public class MoveJournal implements Closeable {
+
+    public static final int MAGIC = 0x324A524E; // "2JRN"
+    // Version 2: moves that change nothing no longer spawn a tile and are not recorded
+    // Version 3: checkpoint entries hold the move count
+    public static final int VERSION = 3;
+    public static final int BATCH_STEPS = 256;
+    public static final int CHECKPOINT_INTERVAL = 1024;
+
+    static final int HEADER_SIZE = 8;
+    static final int BATCH_HEADER_SIZE = 8;
+    static final byte MOVES = 0;
+    static final byte UNDO = 1;
+    static final byte RESET = 2;
+    static final byte SPAWN = 3;
+    static final byte CHECKPOINT = 4;
+    static final byte RESTART = 5;
+
+    private final FileChannel channel;
+    private final TwentyFortyEight game;
+    private final CRC32 crc = new CRC32();
+
+    // Records not written yet
+    private ByteBuffer batch = ByteBuffer.allocate(1024);
+    private int batchSteps;
+    // Directions of the current run of moves, packed 2 bits each
+    private final byte[] run = new byte[BATCH_STEPS / 4];
+    private int runLength;
+
+    private int steps;
+    private int lastCheckpoint;
+    private IOException failure;
+
+    private MoveJournal(FileChannel channel, TwentyFortyEight game, int steps) {
+        this.channel = channel;
+        this.game = game;
+        this.steps = steps;
+        lastCheckpoint = steps;
+    }
+
+    /**
+     * Starts a new journal for a game, replacing the file if it exists. The journal starts with
+     * the current state of the game, including its undo history, and records every change from
+     * now on until it is closed.
+     * @param path location of the journal
+     * @param game game to record
+     * @return the open journal
+     * @throws IOException if the file cannot be created
+     */
+    public static MoveJournal start(Path path, TwentyFortyEight game) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        MoveJournal journal = new MoveJournal(channel, game, 0);
+        journal.writeCheckpoint(CHECKPOINT, true);
+        journal.flush();
+        game.setJournal(journal);
+        return journal;
+    }
+
+    /**
+     * Reopens a journal after a crash or a normal close: replays it, drops a batch that was cut
+     * short, and keeps recording the replayed game at the end of the file.
+     * @param path location of the journal
+     * @return the open journal, whose game is returned by getGame()
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public static MoveJournal recover(Path path) throws IOException {
+        JournalReplay replay = JournalReplay.open(path);
+        TwentyFortyEight game = replay.replay();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(replay.getValidLength());
+            channel.position(replay.getValidLength());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        MoveJournal journal = new MoveJournal(channel, game, replay.getStepCount());
+        game.setJournal(journal);
+        return journal;
+    }
+
+    /**
+     * Getter for the game being recorded
+     * @return game
+     */
+    public TwentyFortyEight getGame() {
+        return game;
+    }
+
+    /**
+     * Getter for the number of steps recorded so far
+     * @return moves, undos, resets, spawns and restarts since the journal started
+     */
+    public int getStepCount() {
+        return steps;
+    }
+
+    void recordMove(Direction direction) {
+        if (runLength == 0) {
+            Arrays.fill(run, (byte) 0);
+        }
+        run[runLength >> 2] |= (byte) (direction.ordinal() << ((runLength & 3) << 1));
+        runLength++;
+        stepDone();
+    }
+
+    void recordUndo() {
+        recordSingle(UNDO);
+    }
+
+    void recordReset() {
+        recordSingle(RESET);
+    }
+
+    void recordSpawn() {
+        recordSingle(SPAWN);
+    }
+
+    /**
+     * Records that the whole state of the game was replaced, with a full checkpoint.
+     */
+    void recordRestart() {
+        endRun();
+        steps++;
+        writeCheckpoint(RESTART, true);
+        lastCheckpoint = steps;
+        batchSteps++;
+        maybeFlush();
+    }
+
+    private void recordSingle(byte type) {
+        endRun();
+        ensure(1);
+        batch.put(type);
+        stepDone();
+    }
+
+    private void stepDone() {
+        steps++;
+        batchSteps++;
+        if (steps - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+            endRun();
+            writeCheckpoint(CHECKPOINT, game.getUndoSize() == 0);
+            lastCheckpoint = steps;
+        }
+        maybeFlush();
+    }
+
+    private void maybeFlush() {
+        if (batchSteps >= BATCH_STEPS) {
+            try {
+                flush();
+            } catch (IOException e) {
+                // Kept and thrown by the next flush() or close(), since moves cannot throw
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Closes the current run of moves, writing it to the batch.
+     */
+    private void endRun() {
+        if (runLength == 0) {
+            return;
+        }
+        int bytes = (runLength + 3) >> 2;
+        ensure(3 + bytes);
+        batch.put(MOVES).putShort((short) runLength).put(run, 0, bytes);
+        runLength = 0;
+    }
+
+    /**
+     * Writes the current state of the game as a checkpoint record.
+     * @param complete whether to store the whole undo history instead of the current board only
+     */
+    private void writeCheckpoint(byte type, boolean complete) {
+        int size = game.getSize();
+        int area = size * size;
+        int count = complete ? game.getUndoSize() + 1 : 1;
+        byte[] boards = new byte[count * area];
+        int[] scores = new int[count];
+        int[] moves = new int[count];
+        if (!complete) {
+            game.copyExponents(boards);
+            scores[0] = game.getCurrScore();
+            moves[0] = game.getMoveCount();
+        } else if (size == BitBoard.SIZE) {
+            long[] packed = new long[count];
+            count = game.getHistory().copyNewest(packed, scores, moves, count);
+            for (int i = 0; i < count; i++) {
+                for (int k = 0; k < area; k++) {
+                    boards[i * area + k] = (byte) ((packed[i] >>> (k << 2)) & 0xF);
+                }
+            }
+        } else {
+            count = game.getGridHistory().copyNewest(boards, scores, moves, count);
+        }
+        ensure(37 + count * (area + 8));
+        batch.put(type)
+                .putInt(steps)
+                .putInt(size)
+                .putInt(game.getUndoDepth())
+                .putLong(game.getSpawner().getState())
+                .putInt(game.getCurrScore())
+                .putInt(game.getHighestScore())
+                .put((byte) (complete ? 1 : 0))
+                .putInt(count);
+        for (int i = 0; i < count; i++) {
+            batch.put(boards, i * area, area).putInt(scores[i]).putInt(moves[i]);
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (batch.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(batch.capacity() * 2,
+                    batch.position() + bytes));
+            batch.flip();
+            grown.put(batch);
+            batch = grown;
+        }
+    }
+
+    /**
+     * Writes every step recorded so far to the file as one batch. The data reaches the page
+     * cache; close() also forces it to the disk.
+     * @throws IOException if this or an earlier automatic flush failed
+     */
+    public void flush() throws IOException {
+        endRun();
+        if (failure != null) {
+            IOException e = failure;
+            failure = null;
+            throw e;
+        }
+        if (batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        crc.reset();
+        crc.update(batch.array(), 0, batch.limit());
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        header.putInt(batch.limit()).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] buffers = {header, batch};
+        while (batch.hasRemaining()) {
+            channel.write(buffers);
+        }
+        batch.clear();
+        batchSteps = 0;
+    }
+
+    /**
+     * Writes what is left, forces the file to the disk and stops recording the game.
+     */
+    @Override
+    public void close() throws IOException {
+        game.setJournal(null);
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
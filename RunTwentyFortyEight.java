@@ -2,7 +2,6 @@ package org.cis120.twentyfortyeight;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.io.IOException;
 import javax.swing.*;
 
 public class RunTwentyFortyEight implements Runnable {
@@ -18,7 +17,9 @@ public class RunTwentyFortyEight implements Runnable {
                         "with the same value in the same row/column will be merged\n" +
                         "when moved around. Press 'Save' when you want to save the\n" +
                         "current game state, and press 'Resume' to resume your last\n" +
-                        "saved progress! Try to get a 2048 to win the game.\n" +
+                        "saved progress! Press 'Hint' for a suggested move, or\n" +
+                        "'Auto' to let the computer play.\n" +
+                        "Try to get a 2048 to win the game.\n" +
                         "Enjoy :)!",
                 "Instructions for 2048",
                 JOptionPane.INFORMATION_MESSAGE);
@@ -66,11 +67,7 @@ public class RunTwentyFortyEight implements Runnable {
         final JButton resume = new JButton("Resume");
         resume.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                try {
-                    board.resume();
-                } catch (IOException ex) {
-                    System.out.println("File does not exist");
-                }
+                board.resume();
             }
         });
         control_panel.add(resume);
@@ -84,9 +81,46 @@ public class RunTwentyFortyEight implements Runnable {
         });
         control_panel.add(undo);
 
+        // Hint: searches for the best move in the background and shows it on the status line
+        final JButton hint = new JButton("Hint");
+        hint.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                board.hint();
+            }
+        });
+        control_panel.add(hint);
+
+        // Auto: while selected, the computer plays every hint it finds
+        final JToggleButton auto = new JToggleButton("Auto");
+        auto.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                board.setAutoPlay(auto.isSelected());
+            }
+        });
+        control_panel.add(auto);
+
+        // Board size: picking a size starts a new game on a board of that size
+        final JComboBox<String> sizes = new JComboBox<>();
+        for (int n = GridBoard.MIN_SIZE; n <= GridBoard.MAX_SIZE; n++) {
+            sizes.addItem(n + "x" + n);
+        }
+        sizes.setSelectedIndex(BitBoard.SIZE - GridBoard.MIN_SIZE);
+        sizes.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                board.newGame(sizes.getSelectedIndex() + GridBoard.MIN_SIZE);
+            }
+        });
+        control_panel.add(sizes);
+
         // Put the frame on the screen
         frame.pack();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Closing the window records the game in progress before the program exits
+        frame.addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                board.quit();
+            }
+        });
         frame.setVisible(true);
 
         // Start the game
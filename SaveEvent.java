@@ -0,0 +1,32 @@
+package org.cis120.twentyfortyeight;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for saving or resuming a game that has a GameMetrics attached.
+ */
+@Name("org.cis120.twentyfortyeight.Save")
+@Label("2048 Save")
+@Category("2048")
+@Description("A game saved to or resumed from a save file")
+class SaveEvent extends Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Slot")
+    int slot;
+
+    @Label("Resume")
+    @Description("True when the game was loaded, false when it was saved")
+    boolean resume;
+
+    @Label("Time Taken")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
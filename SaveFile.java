@@ -0,0 +1,337 @@
+package org.cis120.twentyfortyeight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A binary save file holding many numbered slots, each with a whole game: board, current and
+ * high score, spawner state and the newest part of the undo history.
+ *
+ * The file starts with a header, followed by slots that all have the same size, so slot n is at
+ * a fixed offset and can be read or written without looking at any other slot. The file is memory
+ * mapped, so opening it does not read the slots, and saving or loading a slot is a copy into or
+ * out of the mapping. Every slot carries a CRC32 of its contents, and a slot whose CRC does not
+ * match is reported instead of loaded.
+ *
+ * Header: magic, format version, slot count, slot size, undo entries per slot (ints).
+ * Slot: marker (0 when empty), payload length, CRC32 of the payload, then the payload: board
+ * size, packed board, current score, high score, spawner state, undo entry count and that many
+ * (packed board, score, move count) entries, oldest first, the last one being the current board.
+ *
+ * A board that is not 4x4 is stored as size * size exponent bytes, row after row, wherever the
+ * payload of a 4x4 game has a packed board. Since slots all have the same size, a larger board
+ * keeps fewer undo entries.
+ *
+ * Writes go to the page cache right away; call flush() to force them to the disk.
+ */
+public class SaveFile implements Closeable {
+
+    public static final int MAGIC = 0x32303438; // "2048"
+    // Version 2: undo entries hold the move count
+    public static final int VERSION = 2;
+    public static final int DEFAULT_SLOTS = 16;
+    public static final int DEFAULT_UNDO_ENTRIES = 256;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_USED = 0x534C4F54; // "SLOT"
+    private static final int SLOT_HEADER_SIZE = 12;
+    private static final int PAYLOAD_FIXED_SIZE = 4 + 8 + 4 + 4 + 8 + 4;
+    private static final int UNDO_ENTRY_SIZE = 8 + 4 + 4;
+
+    private final FileChannel channel;
+    private final int slotSize;
+    private final int undoEntries;
+    private int slotCount;
+    private MappedByteBuffer map;
+
+    // Scratch space for undo entries, reused by every save and load
+    private final long[] undoBoards;
+    private final int[] undoScores;
+    private final int[] undoMoves;
+    // Same for boards that are not 4x4, sized for the last board size seen
+    private byte[] gridCells;
+    private byte[] gridBoards;
+    private final CRC32 crc = new CRC32();
+
+    private SaveFile(FileChannel channel, int slotCount, int undoEntries) throws IOException {
+        this.channel = channel;
+        this.slotCount = slotCount;
+        this.undoEntries = undoEntries;
+        this.slotSize = SLOT_HEADER_SIZE + PAYLOAD_FIXED_SIZE + undoEntries * UNDO_ENTRY_SIZE;
+        undoBoards = new long[undoEntries];
+        undoScores = new int[undoEntries];
+        undoMoves = new int[undoEntries];
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(slotCount));
+    }
+
+    /**
+     * Opens a save file, creating it with DEFAULT_SLOTS empty slots if it does not exist.
+     * @param path location of the file
+     * @return the open file
+     * @throws IOException if the file cannot be opened or is not a save file of this version
+     */
+    public static SaveFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                int slotSize = SLOT_HEADER_SIZE + PAYLOAD_FIXED_SIZE
+                        + DEFAULT_UNDO_ENTRIES * UNDO_ENTRY_SIZE;
+                header.putInt(MAGIC).putInt(VERSION).putInt(DEFAULT_SLOTS).putInt(slotSize)
+                        .putInt(DEFAULT_UNDO_ENTRIES).flip();
+                channel.write(header, 0);
+                return new SaveFile(channel, DEFAULT_SLOTS, DEFAULT_UNDO_ENTRIES);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a 2048 save file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported save file version " + version);
+            }
+            int slots = header.getInt();
+            header.getInt(); // slot size, implied by the undo entry count
+            int undo = header.getInt();
+            return new SaveFile(channel, slots, undo);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private long fileSize(int slots) {
+        return HEADER_SIZE + (long) slots * slotSize;
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    /**
+     * Getter for the number of slots in the file
+     * @return slot count
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Checks if a slot holds a saved game, without reading the game.
+     * @param slot slot number
+     * @return true if something was saved in the slot
+     */
+    public boolean isUsed(int slot) {
+        return slot >= 0 && slot < slotCount && map.getInt(offset(slot)) == SLOT_USED;
+    }
+
+    /**
+     * Saves a game into a slot, growing the file if the slot is past its end. Only the newest
+     * undo entries that fit in a slot are kept.
+     * @param slot slot number, 0 or more
+     * @param game game to save
+     * @throws IOException if the file cannot grow or the board is too large for a slot
+     */
+    public void write(int slot, TwentyFortyEight game) throws IOException {
+        if (slot < 0) {
+            throw new IllegalArgumentException("Slot must not be negative");
+        }
+        if (slot >= slotCount) {
+            grow(slot + 1);
+        }
+        int start = offset(slot);
+        int payloadLength;
+        if (game.getSize() == BitBoard.SIZE) {
+            int undoCount = game.getHistory().copyNewest(undoBoards, undoScores, undoMoves,
+                    undoEntries);
+            payloadLength = PAYLOAD_FIXED_SIZE + undoCount * UNDO_ENTRY_SIZE;
+            ByteBuffer payload = slice(start + SLOT_HEADER_SIZE, payloadLength);
+            payload.putInt(BitBoard.SIZE)
+                    .putLong(game.getBits())
+                    .putInt(game.getCurrScore())
+                    .putInt(game.getHighestScore())
+                    .putLong(game.getSpawner().getState())
+                    .putInt(undoCount);
+            for (int i = 0; i < undoCount; i++) {
+                payload.putLong(undoBoards[i]).putInt(undoScores[i]).putInt(undoMoves[i]);
+            }
+        } else {
+            int area = game.getSize() * game.getSize();
+            if (gridPayloadSize(area) > slotSize - SLOT_HEADER_SIZE) {
+                throw new IOException("A " + game.getSize() + "x" + game.getSize()
+                        + " board does not fit in a slot");
+            }
+            int undoCount = game.getGridHistory().copyNewest(gridBoards(area), undoScores,
+                    undoMoves, gridUndoEntries(area));
+            payloadLength = gridPayloadSize(area) + undoCount * (area + 8);
+            ByteBuffer payload = slice(start + SLOT_HEADER_SIZE, payloadLength);
+            game.copyExponents(gridCells);
+            payload.putInt(game.getSize())
+                    .put(gridCells, 0, area)
+                    .putInt(game.getCurrScore())
+                    .putInt(game.getHighestScore())
+                    .putLong(game.getSpawner().getState())
+                    .putInt(undoCount);
+            for (int i = 0; i < undoCount; i++) {
+                payload.put(gridBoards, i * area, area).putInt(undoScores[i])
+                        .putInt(undoMoves[i]);
+            }
+        }
+        map.putInt(start, 0);
+        map.putInt(start + 4, payloadLength);
+        map.putInt(start + 8, checksum(start + SLOT_HEADER_SIZE, payloadLength));
+        map.putInt(start, SLOT_USED);
+    }
+
+    /**
+     * Loads the game saved in a slot into an existing game.
+     * @param slot slot number
+     * @param game game to overwrite
+     * @throws IllegalArgumentException if nothing was saved in the slot
+     * @throws IOException if the slot does not pass its checksum
+     */
+    public void read(int slot, TwentyFortyEight game) throws IOException {
+        if (!isUsed(slot)) {
+            throw new IllegalArgumentException("Nothing saved in slot " + slot);
+        }
+        int start = offset(slot);
+        int payloadLength = map.getInt(start + 4);
+        if (payloadLength < PAYLOAD_FIXED_SIZE
+                || payloadLength > slotSize - SLOT_HEADER_SIZE
+                || map.getInt(start + 8) != checksum(start + SLOT_HEADER_SIZE, payloadLength)) {
+            throw new IOException("Slot " + slot + " is corrupted");
+        }
+        ByteBuffer payload = slice(start + SLOT_HEADER_SIZE, payloadLength);
+        int size = payload.getInt();
+        if (size != BitBoard.SIZE) {
+            readGrid(slot, size, payload, game);
+            return;
+        }
+        long bits = payload.getLong();
+        int currScore = payload.getInt();
+        int highestScore = payload.getInt();
+        long spawnerState = payload.getLong();
+        int undoCount = Math.min(payload.getInt(), undoEntries);
+        for (int i = 0; i < undoCount; i++) {
+            undoBoards[i] = payload.getLong();
+            undoScores[i] = payload.getInt();
+            undoMoves[i] = payload.getInt();
+        }
+        game.restore(bits, currScore, highestScore, new TileSpawner(spawnerState),
+                undoBoards, undoScores, undoMoves, undoCount);
+    }
+
+    /**
+     * Loads a board that is not 4x4, see read().
+     */
+    private void readGrid(int slot, int size, ByteBuffer payload, TwentyFortyEight game)
+            throws IOException {
+        if (size < GridBoard.MIN_SIZE || size > GridBoard.MAX_SIZE
+                || payload.limit() < gridPayloadSize(size * size)) {
+            throw new IOException("Slot " + slot + " holds a " + size + "x" + size + " board");
+        }
+        int area = size * size;
+        byte[] boards = gridBoards(area);
+        payload.get(gridCells, 0, area);
+        int currScore = payload.getInt();
+        int highestScore = payload.getInt();
+        long spawnerState = payload.getLong();
+        int undoCount = Math.min(payload.getInt(), gridUndoEntries(area));
+        if (payload.remaining() < undoCount * (area + 8)) {
+            throw new IOException("Slot " + slot + " is corrupted");
+        }
+        for (int i = 0; i < undoCount; i++) {
+            payload.get(boards, i * area, area);
+            undoScores[i] = payload.getInt();
+            undoMoves[i] = payload.getInt();
+        }
+        try {
+            game.restore(size, gridCells, currScore, highestScore, new TileSpawner(spawnerState),
+                    boards, undoScores, undoMoves, undoCount);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Slot " + slot + " is corrupted", e);
+        }
+    }
+
+    private static int gridPayloadSize(int area) {
+        return PAYLOAD_FIXED_SIZE - 8 + area;
+    }
+
+    /**
+     * Number of undo entries of a board with the given number of cells that fit in a slot.
+     */
+    private int gridUndoEntries(int area) {
+        int room = slotSize - SLOT_HEADER_SIZE - gridPayloadSize(area);
+        return Math.max(0, Math.min(undoEntries, room / (area + 8)));
+    }
+
+    /**
+     * Scratch space for the undo boards of a board with the given number of cells.
+     */
+    private byte[] gridBoards(int area) {
+        if (gridCells == null || gridCells.length != area) {
+            gridCells = new byte[area];
+            gridBoards = new byte[gridUndoEntries(area) * area];
+        }
+        return gridBoards;
+    }
+
+    /**
+     * Marks a slot as empty.
+     * @param slot slot number
+     */
+    public void delete(int slot) {
+        if (slot >= 0 && slot < slotCount) {
+            map.putInt(offset(slot), 0);
+        }
+    }
+
+    /**
+     * Forces every write so far to the disk.
+     */
+    public void flush() {
+        map.force();
+    }
+
+    /**
+     * Closes the file without forcing it to the disk. Writes still reach the file through the
+     * page cache; call flush() first if they must survive a crash of the machine.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer view = map.duplicate();
+        view.position(position).limit(position + length);
+        return view.slice();
+    }
+
+    private int checksum(int position, int length) {
+        crc.reset();
+        crc.update(slice(position, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Makes room for more slots and maps the larger file. The new slots read as empty since
+     * the file grows with zeros.
+     */
+    private void grow(int slots) throws IOException {
+        int newCount = Math.max(slots, slotCount * 2);
+        map.force();
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(newCount));
+        map.putInt(8, newCount);
+        slotCount = newCount;
+    }
+}
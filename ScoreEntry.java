@@ -0,0 +1,73 @@
+package org.cis120.twentyfortyeight;
+
+/**
+ * One finished game on the leaderboard.
+ */
+public class ScoreEntry {
+
+    private final long time;
+    private final int score;
+    private final int moves;
+    private final int maxExponent;
+    private final int size;
+    // Order of arrival, breaks ties between equal scores so that the earlier game ranks first
+    private final long sequence;
+
+    ScoreEntry(long time, int score, int moves, int maxExponent, int size, long sequence) {
+        this.time = time;
+        this.score = score;
+        this.moves = moves;
+        this.maxExponent = maxExponent;
+        this.size = size;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Getter for when the game was recorded
+     * @return milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Getter for the final score
+     * @return score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Getter for the number of moves, if known
+     * @return moves, or 0 when the game did not count them
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Getter for the value of the highest tile
+     * @return highest tile
+     */
+    public int getMaxTile() {
+        return BitBoard.toValue(maxExponent);
+    }
+
+    /**
+     * Getter for the board size of the game
+     * @return number of cells in a row
+     */
+    public int getSize() {
+        return size;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return score + " (" + size + "x" + size + ", " + getMaxTile() + ")";
+    }
+}
@@ -0,0 +1,64 @@
+package org.cis120.twentyfortyeight;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts games by score to answer "how many games scored more than X" in logarithmic time.
+ *
+ * Scores in 2048 are multiples of 4, so each score has a slot of its own at score / 4. Slots are
+ * grouped in pages of PAGE_SLOTS: a Fenwick tree over the pages counts the games of every page,
+ * and each page has its own Fenwick tree over its slots. Both trees run from high scores to low
+ * ones, so a prefix sum counts the games above a score. Pages are only created for scores that
+ * were seen, so memory follows the range of scores actually reached.
+ *
+ * Every count is an atomic add, so many threads can record at once without locks. A count read
+ * while others are recording may miss their latest games.
+ */
+class ScoreRanks {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SLOTS = 1 << PAGE_BITS;
+    private static final int SLOTS = (Integer.MAX_VALUE >>> 2) + 1;
+    private static final int PAGES = SLOTS >>> PAGE_BITS;
+
+    // Fenwick trees, 1-based, indexed from the highest page or slot down
+    private final AtomicLongArray pageTree = new AtomicLongArray(PAGES + 1);
+    private final AtomicReferenceArray<AtomicLongArray> slotTrees =
+            new AtomicReferenceArray<>(PAGES);
+
+    void add(int score) {
+        int slot = score >>> 2;
+        int page = slot >>> PAGE_BITS;
+        AtomicLongArray tree = slotTrees.get(page);
+        if (tree == null) {
+            slotTrees.compareAndSet(page, null, new AtomicLongArray(PAGE_SLOTS + 1));
+            tree = slotTrees.get(page);
+        }
+        for (int i = PAGES - page; i <= PAGES; i += i & -i) {
+            pageTree.incrementAndGet(i);
+        }
+        for (int i = PAGE_SLOTS - (slot & (PAGE_SLOTS - 1)); i <= PAGE_SLOTS; i += i & -i) {
+            tree.incrementAndGet(i);
+        }
+    }
+
+    /**
+     * Number of games that scored more than a score.
+     */
+    long countAbove(int score) {
+        int slot = score >>> 2;
+        int page = slot >>> PAGE_BITS;
+        long above = 0;
+        for (int i = PAGES - page - 1; i > 0; i -= i & -i) {
+            above += pageTree.get(i);
+        }
+        AtomicLongArray tree = slotTrees.get(page);
+        if (tree != null) {
+            for (int i = PAGE_SLOTS - (slot & (PAGE_SLOTS - 1)) - 1; i > 0; i -= i & -i) {
+                above += tree.get(i);
+            }
+        }
+        return above;
+    }
+}
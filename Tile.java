@@ -2,8 +2,12 @@ package org.cis120.twentyfortyeight;
 
 import java.awt.*;
 
+/**
+ * One cell of a Tile[][] board. The cell itself can change, but its value, label and colors come
+ * from a shared TileStyle, so setting a value or asking for colors creates nothing.
+ */
 public class Tile {
-    private int value;
+    private TileStyle style;
 
     /**
      * Creates an instance of Tile with value 0 - that is, it currently holds no value and is ready
@@ -11,14 +15,14 @@ public class Tile {
      * number already existing moving to this specific tile.
      */
     public Tile() {
-        value = 0;
+        style = TileStyle.ofExponent(0);
     }
 
     /**
      * Creates an instance of Tile with a set value as its input.
      */
     public Tile(int v) {
-        value = v;
+        style = TileStyle.of(v);
     }
 
     /**
@@ -26,7 +30,15 @@ public class Tile {
      * and updating the original tile.
      */
     public void setValue(int v) {
-        value = v;
+        style = TileStyle.of(v);
+    }
+
+    /**
+     * Sets the value of this tile from its exponent, skipping the checks of setValue().
+     * @param exponent log2 of the value, 0 for an empty cell
+     */
+    void setExponent(int exponent) {
+        style = TileStyle.ofExponent(exponent);
     }
 
     /**
@@ -37,7 +49,15 @@ public class Tile {
      * @return value of the tile.
      */
     public int getValue() {
-        return value;
+        return style.getValue();
+    }
+
+    /**
+     * Getter for the shared style of the tile's value
+     * @return style with the label and colors
+     */
+    public TileStyle getStyle() {
+        return style;
     }
 
     /**
@@ -47,7 +67,7 @@ public class Tile {
      * @return true if two tiles have equal value; false otherwise.
      */
     public boolean equals(Tile t) {
-        return value == t.getValue();
+        return getValue() == t.getValue();
     }
 
     /**
@@ -55,7 +75,7 @@ public class Tile {
      * be called if the result of two merging tiles will appear on this specific tile.
      */
     public void merge(Tile t) {
-        setValue(value + t.getValue());
+        setValue(getValue() + t.getValue());
     }
 
     /**
@@ -70,7 +90,7 @@ public class Tile {
      * @return true if the tile is empty; false otherwise.
      */
     public boolean isEmpty() {
-        return value == 0;
+        return getValue() == 0;
     }
 
     /**
@@ -78,21 +98,7 @@ public class Tile {
      * @return color of the tile background according to the value
      */
     public Color getBackgroundColor() {
-        switch (value) {
-            case 0: return new Color(0xcdc1b4);
-            case 2: return new Color(0xeee4da);
-            case 4: return new Color(0xede0c8);
-            case 8: return new Color(0xf2b179);
-            case 16: return new Color(0xf59563);
-            case 32: return new Color(0xf67c5f);
-            case 64: return new Color(0xf65e3b);
-            case 128: return new Color(0xedcf72);
-            case 256: return new Color(0xedcc61);
-            case 512: return new Color(0xedc850);
-            case 1024: return new Color(0xedc53f);
-            case 2048: return new Color(0xedc22e);
-            default: return new Color(0x248c51);
-        }
+        return style.getBackgroundColor();
     }
 
     /**
@@ -100,13 +106,7 @@ public class Tile {
      * @return color of the tile font according to the value
      */
     public Color getNumberColor() {
-        switch (value) {
-            case 0: return new Color(0xcdc1b4);
-            case 2:
-            case 4:
-                return Color.BLACK;
-            default: return Color.WHITE;
-        }
+        return style.getNumberColor();
     }
 
     /**
@@ -116,7 +116,7 @@ public class Tile {
      */
     @Override
     public String toString() {
-        return Integer.toString(value);
+        return style.getLabel();
     }
 
 
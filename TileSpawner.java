@@ -0,0 +1,112 @@
+package org.cis120.twentyfortyeight;
+
+import java.util.SplittableRandom;
+
+/**
+ * Places the new tile after every move.
+ *
+ * A spawner owns a small splitmix64 generator whose whole state is one long. The same seed
+ * always produces the same tiles in the same order, getState() can be saved and handed back to
+ * the constructor to continue exactly where a game left off, and split() hands out independent
+ * spawners for other threads without sharing any state.
+ *
+ * The new tile goes on an empty cell picked uniformly at random from a free-cell mask, in a fixed
+ * number of steps no matter how full the board is.
+ */
+public class TileSpawner {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+    private int lastCell = -1;
+    private int lastExponent;
+
+    /**
+     * Creates a spawner with an unpredictable seed.
+     */
+    public TileSpawner() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Creates a spawner that always produces the same tiles, or continues a saved one.
+     * @param seed seed of the generator, or a value returned by getState()
+     */
+    public TileSpawner(long seed) {
+        state = seed;
+    }
+
+    /**
+     * Getter for the state of the generator
+     * @return a value that recreates this spawner when passed to the constructor
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Creates a new spawner seeded from this one, for use on another thread.
+     * @return an independent spawner
+     */
+    public TileSpawner split() {
+        return new TileSpawner(nextLong());
+    }
+
+    /**
+     * Draws 64 random bits.
+     */
+    public long nextLong() {
+        long z = (state += GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Draws a number from 0 (inclusive) to bound (exclusive), by scaling 32 random bits. The
+     * bias is below bound / 2^32, which is nothing for the small bounds used here.
+     * @param bound upper bound, positive
+     */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Draws the value of a new tile: 4 with probability FOUR_ROLLS out of SPAWN_ROLLS, 2 otherwise.
+     * @return exponent of the new tile, 1 for a 2 or 2 for a 4
+     */
+    public int nextExponent() {
+        return nextInt(TwentyFortyEight.SPAWN_ROLLS) < TwentyFortyEight.FOUR_ROLLS ? 2 : 1;
+    }
+
+    /**
+     * Puts a new tile on a random free cell.
+     * @param board packed board
+     * @param freeCells mask of the free cells of the board, as made by BitBoard.emptyMask()
+     * @return the board with the new tile, or the same board if there is no free cell
+     */
+    public long spawn(long board, long freeCells) {
+        if (freeCells == 0) {
+            lastCell = -1;
+            return board;
+        }
+        lastCell = BitBoard.selectCell(freeCells, nextInt(Long.bitCount(freeCells)));
+        lastExponent = nextExponent();
+        return board | ((long) lastExponent << (lastCell << 2));
+    }
+
+    /**
+     * Getter for the cell of the last spawned tile
+     * @return cell index 4 * row + col, or -1 if the last call found the board full
+     */
+    public int getLastCell() {
+        return lastCell;
+    }
+
+    /**
+     * Getter for the exponent of the last spawned tile
+     * @return 1 for a 2 or 2 for a 4
+     */
+    public int getLastExponent() {
+        return lastExponent;
+    }
+}
@@ -0,0 +1,133 @@
+package org.cis120.twentyfortyeight;
+
+import java.awt.Color;
+
+/**
+ * How a tile value looks: its label, colors and the scale of its font. There is one shared,
+ * immutable TileStyle per power of two up to 2^GridBoard.MAX_EXPONENT, built once and looked up
+ * by exponent, so drawing a tile or asking a Tile for its colors never creates an object.
+ *
+ * The palette has its own colors up to 2^(PALETTE_SIZE - 1); higher tiles use the last one.
+ * Labels longer than four digits get a smaller font so they still fit in their cell.
+ */
+public final class TileStyle {
+
+    public static final int PALETTE_SIZE = 18;
+
+    private static final int[] BACKGROUNDS = {
+        0xcdc1b4, 0xeee4da, 0xede0c8, 0xf2b179, 0xf59563, 0xf67c5f, 0xf65e3b, 0xedcf72,
+        0xedcc61, 0xedc850, 0xedc53f, 0xedc22e, 0x248c51, 0x1e7a8c, 0x2f5fa8, 0x4a3fa0,
+        0x6b2f8f, 0x3c3a32
+    };
+    private static final Color EMPTY = new Color(BACKGROUNDS[0]);
+    // Font scale by label length, longer labels than the table use its last entry
+    private static final float[] FONT_SCALES = {
+        1f, 1f, 1f, 1f, 1f, 0.8f, 0.67f, 0.57f, 0.5f, 0.45f
+    };
+
+    private static final TileStyle[] BY_EXPONENT = new TileStyle[GridBoard.MAX_EXPONENT + 1];
+
+    static {
+        Color[] backgrounds = new Color[PALETTE_SIZE];
+        for (int e = 0; e < PALETTE_SIZE; e++) {
+            backgrounds[e] = new Color(BACKGROUNDS[e]);
+        }
+        for (int e = 0; e <= GridBoard.MAX_EXPONENT; e++) {
+            Color background = backgrounds[Math.min(e, PALETTE_SIZE - 1)];
+            Color number = e == 0 ? EMPTY : e <= 2 ? Color.BLACK : Color.WHITE;
+            BY_EXPONENT[e] = new TileStyle(e == 0 ? 0 : 1 << e, e, background, number);
+        }
+    }
+
+    private final int value;
+    private final int exponent;
+    private final String label;
+    private final Color background;
+    private final Color number;
+    private final float fontScale;
+
+    private TileStyle(int value, int exponent, Color background, Color number) {
+        this.value = value;
+        this.exponent = exponent;
+        this.label = Integer.toString(value);
+        this.background = background;
+        this.number = number;
+        fontScale = FONT_SCALES[Math.min(label.length(), FONT_SCALES.length - 1)];
+    }
+
+    /**
+     * Looks up the style of an exponent.
+     * @param exponent log2 of the value, 0 for an empty cell, up to GridBoard.MAX_EXPONENT
+     * @return the shared style
+     */
+    public static TileStyle ofExponent(int exponent) {
+        return BY_EXPONENT[exponent];
+    }
+
+    /**
+     * Looks up the style of a value. A value that is not a tile value, which a Tile can still be
+     * set to, gets a style of its own with the colors of the highest tile.
+     * @param value tile value
+     * @return the shared style for tile values, a new one otherwise
+     */
+    public static TileStyle of(int value) {
+        if (value == 0) {
+            return BY_EXPONENT[0];
+        }
+        int exponent = Integer.numberOfTrailingZeros(value);
+        if (value > 0 && Integer.bitCount(value) == 1 && exponent >= 1
+                && exponent <= GridBoard.MAX_EXPONENT) {
+            return BY_EXPONENT[exponent];
+        }
+        TileStyle last = BY_EXPONENT[GridBoard.MAX_EXPONENT];
+        return new TileStyle(value, -1, last.background, last.number);
+    }
+
+    /**
+     * Getter for the value
+     * @return tile value, 0 for an empty cell
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Getter for the exponent
+     * @return log2 of the value, 0 for an empty cell, -1 if the value is not a tile value
+     */
+    public int getExponent() {
+        return exponent;
+    }
+
+    /**
+     * Getter for the text drawn on the tile
+     * @return the value as a String
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Getter for the background color
+     * @return color of the tile
+     */
+    public Color getBackgroundColor() {
+        return background;
+    }
+
+    /**
+     * Getter for the color of the label
+     * @return color of the number
+     */
+    public Color getNumberColor() {
+        return number;
+    }
+
+    /**
+     * Getter for how much smaller than the base font the label is drawn
+     * @return factor from 0 to 1, 1 for labels of up to four digits
+     */
+    public float getFontScale() {
+        return fontScale;
+    }
+}
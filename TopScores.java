@@ -0,0 +1,67 @@
+package org.cis120.twentyfortyeight;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The best entries seen so far, at most a fixed number of them, best first.
+ *
+ * The entries are a concurrent skip list, so adding is logarithmic and never locks. Once the
+ * list is full, an entry that would not make it is turned away after looking at the lowest one,
+ * and an entry that does make it pushes the lowest one out.
+ */
+class TopScores {
+
+    private static final Comparator<ScoreEntry> BEST_FIRST =
+            Comparator.comparingInt(ScoreEntry::getScore).reversed()
+                    .thenComparingLong(ScoreEntry::getSequence);
+
+    private final int capacity;
+    private final ConcurrentSkipListSet<ScoreEntry> entries =
+            new ConcurrentSkipListSet<>(BEST_FIRST);
+    private final AtomicInteger count = new AtomicInteger();
+
+    TopScores(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void add(ScoreEntry entry) {
+        if (count.get() >= capacity) {
+            ScoreEntry lowest = entries.isEmpty() ? null : entries.last();
+            if (lowest != null && BEST_FIRST.compare(entry, lowest) > 0) {
+                return;
+            }
+        }
+        entries.add(entry);
+        if (count.incrementAndGet() > capacity) {
+            if (entries.pollLast() != null) {
+                count.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Best score so far
+     * @return score of the first entry, or 0 if there is none
+     */
+    int best() {
+        return entries.isEmpty() ? 0 : entries.first().getScore();
+    }
+
+    /**
+     * The best entries, best first
+     * @param n most entries to return
+     */
+    List<ScoreEntry> top(int n) {
+        List<ScoreEntry> result = new ArrayList<>(Math.min(n, capacity));
+        Iterator<ScoreEntry> it = entries.iterator();
+        while (result.size() < n && it.hasNext()) {
+            result.add(it.next());
+        }
+        return result;
+    }
+}
@@ -1,127 +1,465 @@
 package org.cis120.twentyfortyeight;
 
 import java.io.*;
-import java.util.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
 
 public class TwentyFortyEight {
 
+    // A new tile is a 4 when a roll out of SPAWN_ROLLS lands below FOUR_ROLLS, and a 2 otherwise
+    public static final int SPAWN_ROLLS = 9;
+    public static final int FOUR_ROLLS = 2;
+    public static final double FOUR_PROBABILITY = (double) FOUR_ROLLS / SPAWN_ROLLS;
+
+    // Number of past states kept for undo unless setUndoDepth() says otherwise
+    public static final int DEFAULT_UNDO_DEPTH = 1024;
+
+    private static final int[] NO_SLIDES = new int[0];
+
     private int size;
     private int currScore;
+    // Moves that changed the board since the game started, less the ones undone. Every undo
+    // entry keeps the count that goes with its board, like its score.
+    private int moveCount;
     private int highestScore;
-    private LinkedList<Integer> historyScores = new LinkedList<>();
-    private LinkedList<int[][]> boardList = new LinkedList<>();
+    private int undoDepth = DEFAULT_UNDO_DEPTH;
+    private UndoHistory history;
+    // The Tile[][] view is only created and refreshed when getBoard() is called after a change
     private Tile[][] board;
+    private boolean boardStale;
+    private long bits;
+    private long freeCells;
+    // Boards other than 4x4 live in a GridBoard with its own history instead of bits and history
+    private GridBoard grid;
+    private GridHistory gridHistory;
+    private byte[] gridCells;
+    private int[] slides;
+    // Status of the board, kept up to date by every change so that getters never scan it.
+    // On a GridBoard the mergeable pairs are only counted when asked for, -1 until then.
+    private int maxExponent;
+    private int mergeablePairs;
+    private boolean gameOver;
+    private TileSpawner spawner;
+    // Records every change while a MoveJournal is open, null otherwise
+    private MoveJournal journal;
+    // Receives every finished game when set; resultRecorded keeps a game from counting twice
+    private Leaderboard leaderboard;
+    private boolean resultRecorded;
+    // Counts what the engine does when set, null otherwise
+    private GameMetrics metrics;
 
     /**
      * Constructor sets up game state.
      */
     public TwentyFortyEight() {
+        this(new TileSpawner());
+    }
+
+    /**
+     * Sets up a game whose tiles come from a seeded generator, so the same seed and the same
+     * moves always give the same game.
+     * @param seed seed of the tile generator
+     */
+    public TwentyFortyEight(long seed) {
+        this(new TileSpawner(seed));
+    }
+
+    /**
+     * Sets up a game whose tiles come from the given spawner.
+     * @param spawner source of new tiles, owned by this game from now on
+     */
+    public TwentyFortyEight(TileSpawner spawner) {
+        this(BitBoard.SIZE, spawner);
+    }
+
+    /**
+     * Sets up a game on a size x size board whose tiles come from a seeded generator.
+     * @param size number of cells in a row, 4 or from GridBoard.MIN_SIZE to GridBoard.MAX_SIZE
+     * @param seed seed of the tile generator
+     */
+    public TwentyFortyEight(int size, long seed) {
+        this(size, new TileSpawner(seed));
+    }
+
+    /**
+     * Sets up a game on a size x size board whose tiles come from the given spawner. A 4x4 board
+     * uses the packed BitBoard engine, any other size a GridBoard.
+     * @param size number of cells in a row, 4 or from GridBoard.MIN_SIZE to GridBoard.MAX_SIZE
+     * @param spawner source of new tiles, owned by this game from now on
+     */
+    public TwentyFortyEight(int size, TileSpawner spawner) {
+        this.spawner = spawner;
+        setSize(size);
         reset();
     }
 
     /**
      * A second constructor of TwentyFortyEight used for testing purposes.
-     * @param board a 2D-array of Tile[][] as the board of the game
+     * @param board a square 2D-array of Tile[][] as the board of the game
      */
     public TwentyFortyEight(Tile[][] board) {
         currScore = 0;
-        historyScores.addLast(currScore);
-        size = 4;
+        spawner = new TileSpawner();
+        setSize(board.length);
         this.board = board;
-        boardList.addLast(convertBoard(this.board));
+        if (grid == null) {
+            setBits(BitBoard.fromTiles(board));
+        } else {
+            for (int i = 0; i < size; i++) {
+                if (board[i].length != size) {
+                    throw new IllegalArgumentException("Board must be square");
+                }
+                for (int j = 0; j < size; j++) {
+                    gridCells[i * size + j] = (byte) GridBoard.toExponent(board[i][j].getValue());
+                }
+            }
+            grid.copyFrom(gridCells);
+            gridChanged();
+        }
+        pushHistory();
     }
 
     /**
-     * Creates a default board that's in size 4x4 with all empty tiles. The current score is 0, and
-     * the LinkedList scores stores the first historical score 0.
+     * Creates a default board of the current size with two random tiles. The current score is 0,
+     * and the new board goes on top of the undo history with the score 0.
      */
     public void reset() {
+        recordResult();
+        resultRecorded = false;
         currScore = 0;
-        historyScores.addLast(currScore);
-        size = 4;
-        board = new Tile[size][size];
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                board[i][j] = new Tile();
-            }
+        moveCount = 0;
+        if (grid == null) {
+            setBits(0);
+        } else {
+            grid.clear();
+            gridChanged();
+        }
+        spawnTile();
+        spawnTile();
+        pushHistory();
+        if (journal != null) {
+            journal.recordReset();
+        }
+    }
+
+    /**
+     * Switches to an empty board of another size with an empty undo history. The Tile[][] view
+     * is replaced too.
+     */
+    private void setSize(int newSize) {
+        if (newSize == BitBoard.SIZE) {
+            grid = null;
+            gridHistory = null;
+            history = new UndoHistory(undoDepth);
+        } else {
+            grid = new GridBoard(newSize);
+            gridHistory = new GridHistory(undoDepth, newSize * newSize);
+            gridCells = new byte[newSize * newSize];
+            slides = new int[newSize * newSize];
+            history = null;
         }
-        generateNewTile();
-        generateNewTile();
-        boardList.addLast(convertBoard(board));
+        size = newSize;
+        board = null;
+        boardStale = true;
     }
 
     /**
      * Cancels the player's previous movement by changing the board to its previous state and
-     * update the scores to the previous state as well.
+     * update the scores to the previous state as well. Does nothing, and counts nothing, when
+     * there is no move to undo.
      */
     public void undo() {
-        if (boardList.size() > 1 && historyScores.size() > 1) {
-            boardList.removeLast();
-            historyScores.removeLast();
-            board = convertIntArray(boardList.peekLast());
-            currScore = historyScores.peekLast();
-            updateHighestScore();
+        // Undoing the first entry of a game goes back to the end of the game before a reset,
+        // which was recorded when it was left
+        boolean previousGame = moveCount == 0;
+        if (grid == null) {
+            if (!history.pop()) {
+                return;
+            }
+            setBits(history.board());
+            currScore = history.score();
+            moveCount = history.moves();
+        } else {
+            if (!gridHistory.pop()) {
+                return;
+            }
+            gridHistory.copyTop(gridCells);
+            grid.copyFrom(gridCells);
+            gridChanged();
+            currScore = gridHistory.score();
+            moveCount = gridHistory.moves();
         }
+        if (previousGame) {
+            resultRecorded = true;
+        }
+        updateHighestScore();
+        if (metrics != null) {
+            metrics.undone(getUndoSize());
+        }
+        if (journal != null) {
+            journal.recordUndo();
+        }
+    }
+
+    /**
+     * Changes how many past states are kept for undo. The current state is kept, older ones are
+     * dropped, and the best score so far is still remembered.
+     * @param depth number of states to keep, or UndoHistory.UNLIMITED to keep all of them (in
+     *              compressed form on a 4x4 board)
+     */
+    public void setUndoDepth(int depth) {
+        undoDepth = depth;
+        if (grid == null) {
+            int best = history.bestScore();
+            history = new UndoHistory(depth);
+            history.reset(bits, currScore, moveCount, best);
+        } else {
+            int best = gridHistory.bestScore();
+            gridHistory = new GridHistory(depth, size * size);
+            grid.copyTo(gridCells);
+            gridHistory.reset(gridCells, currScore, moveCount, best);
+        }
+        if (journal != null) {
+            journal.recordRestart();
+        }
+    }
+
+    /**
+     * Getter for how many past states are kept for undo
+     * @return depth, or UndoHistory.UNLIMITED
+     */
+    public int getUndoDepth() {
+        return undoDepth;
+    }
+
+    /**
+     * Starts or stops sending every change to a journal, used by MoveJournal.
+     * @param journal journal to record to, or null to stop recording
+     */
+    void setJournal(MoveJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Starts or stops recording finished games on a leaderboard. While one is set, the highest
+     * score includes the best score recorded there for this board size.
+     * @param leaderboard leaderboard to record to, or null to stop recording
+     */
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+        updateHighestScore();
+    }
+
+    /**
+     * Starts or stops counting what the engine does for this game.
+     * @param metrics counters to update, or null to stop counting
+     */
+    public void setMetrics(GameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Getter for the counters this game updates
+     * @return metrics, or null if none are attached
+     */
+    public GameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Getter for the leaderboard finished games are recorded on
+     * @return leaderboard, or null if none is set
+     */
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
     }
 
     /**
-     * When player chooses to save the current game board, saves it to the file input.
+     * Records the game on the leaderboard, unless it was already recorded or has no score. This
+     * happens by itself when the game is over, and when it is reset or replaced by a saved game
+     * before that, so that the score of a game left unfinished is kept too. Whoever replaces a
+     * game by another object, or quits, calls this for the game being left.
+     */
+    void recordResult() {
+        if (leaderboard != null && !resultRecorded && currScore > 0) {
+            leaderboard.record(currScore, moveCount, maxExponent, size);
+            resultRecorded = true;
+        }
+    }
+
+    /**
+     * Getter for the number of moves that can still be undone
+     * @return undo depth currently available
+     */
+    public int getUndoSize() {
+        return (grid == null ? history.size() : gridHistory.size()) - 1;
+    }
+
+    /**
+     * Puts the current board and score on top of the undo history.
+     */
+    private void pushHistory() {
+        if (grid == null) {
+            history.push(bits, currScore, moveCount);
+        } else {
+            grid.copyTo(gridCells);
+            gridHistory.push(gridCells, currScore, moveCount);
+        }
+    }
+
+    /**
+     * When player chooses to save the current game board, saves it to slot 0 of the save file.
      * @param filename name of the file to save the progress
      */
     public void saveBoard(String filename) {
+        saveBoard(filename, 0);
+    }
+
+    /**
+     * Saves the whole game, including the undo history and the tile generator, to a numbered
+     * slot of a binary save file (see SaveFile). Other slots of the file are left alone.
+     * @param filename name of the file to save the progress
+     * @param slot slot number, 0 or more
+     */
+    public void saveBoard(String filename, int slot) {
         if (filename == null) {
             throw new IllegalArgumentException();
         }
-        try {
-            FileWriter fw = new FileWriter(filename);
-            BufferedWriter bw = new BufferedWriter(fw);
-            bw.write(currScore);
-            bw.write(highestScore);
-            String s = "";
-            for (int i = 0; i < board.length; i++) {
-                for (int j = 0; j < board[i].length; j++) {
-                    s += Integer.toString(board[i][j].getValue());
-                    if (j < board[i].length - 1) {
-                        s += " ";
-                    }
-                }
-                s += "\n";
-            }
-            bw.write(s);
-            bw.close();
+        long start = metrics == null ? 0 : System.nanoTime();
+        try (SaveFile file = SaveFile.open(Paths.get(filename))) {
+            file.write(slot, this);
         } catch (IOException e) {
-            System.out.println("No more lines");
+            System.out.println("Could not save the game: " + e.getMessage());
+        }
+        if (metrics != null) {
+            metrics.saveDone(filename, slot, false, start);
         }
     }
 
     /**
-     * When a player chooses to resume a gaming progress saved before, the file they saved the
-     * progress in gets read by a BufferedReader and resumes their progress.
+     * When a player chooses to resume a gaming progress saved before, the game in slot 0 of the
+     * save file is loaded.
      * @param filename name of the file to resume the progress
-     * @throws IOException when file does not exist
+     * @throws IOException when the saved game is corrupted
      */
     public void resumeBoard(String filename) throws IOException {
+        resumeBoard(filename, 0);
+    }
+
+    /**
+     * Loads the game saved in a numbered slot of a binary save file.
+     * @param filename name of the file to resume the progress
+     * @param slot slot number
+     * @throws IOException when the saved game is corrupted
+     */
+    public void resumeBoard(String filename, int slot) throws IOException {
         if (filename == null) {
             throw new IllegalArgumentException();
         }
-        try {
-            FileReader fr = new FileReader(filename);
-            BufferedReader br = new BufferedReader(fr);
-            Scanner sc = new Scanner(br);
-            currScore = br.read();
-            highestScore = br.read();
-            while (sc.hasNextLine()) {
-                for (int i = 0; i < 4; i++) {
-                    String[] line = sc.nextLine().trim().split(" ");
-                    for (int j = 0; j < 4; j++) {
-                        board[i][j].setValue(Integer.parseInt(line[j]));
-                    }
-                }
-            }
-            br.close();
-        } catch (FileNotFoundException e) {
+        Path path = Paths.get(filename);
+        if (!Files.exists(path)) {
             throw new IllegalArgumentException("File does not exist");
         }
+        long start = metrics == null ? 0 : System.nanoTime();
+        try (SaveFile file = SaveFile.open(path)) {
+            file.read(slot, this);
+        }
+        if (metrics != null) {
+            metrics.saveDone(filename, slot, true, start);
+        }
+    }
+
+    /**
+     * Getter for the undo history of a 4x4 game, used by SaveFile
+     * @return history, or null on other board sizes
+     */
+    UndoHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Getter for the undo history of a game that is not 4x4, used by SaveFile
+     * @return history, or null on a 4x4 board
+     */
+    GridHistory getGridHistory() {
+        return gridHistory;
+    }
+
+    /**
+     * Replaces the whole state of the game with a saved one, used by SaveFile.
+     * @param newBits packed board
+     * @param score current score
+     * @param highScore high score
+     * @param newSpawner spawner continuing the saved tile generator
+     * @param boards saved undo boards, oldest first, the last one being newBits
+     * @param scores scores that go with the saved undo boards
+     * @param moves move counts that go with the saved undo boards
+     * @param count number of saved undo entries
+     */
+    void restore(long newBits, int score, int highScore, TileSpawner newSpawner,
+                 long[] boards, int[] scores, int[] moves, int count) {
+        recordResult();
+        resultRecorded = false;
+        if (grid != null) {
+            setSize(BitBoard.SIZE);
+        }
+        history.clear();
+        if (count == 0) {
+            history.reset(newBits, score, 0, highScore);
+        } else {
+            history.reset(boards[0], scores[0], moves[0], highScore);
+            for (int i = 1; i < count; i++) {
+                history.push(boards[i], scores[i], moves[i]);
+            }
+        }
+        spawner = newSpawner;
+        currScore = score;
+        moveCount = history.moves();
+        setBits(newBits);
+        updateHighestScore();
+        if (journal != null) {
+            journal.recordRestart();
+        }
+    }
+
+    /**
+     * Replaces the whole state of the game with a saved one on a board that is not 4x4, used by
+     * SaveFile.
+     * @param newSize number of cells in a row
+     * @param cells exponents of the board, row after row
+     * @param score current score
+     * @param highScore high score
+     * @param newSpawner spawner continuing the saved tile generator
+     * @param boards saved undo boards one after another, oldest first, the last one being cells
+     * @param scores scores that go with the saved undo boards
+     * @param moves move counts that go with the saved undo boards
+     * @param count number of saved undo entries
+     */
+    void restore(int newSize, byte[] cells, int score, int highScore, TileSpawner newSpawner,
+                 byte[] boards, int[] scores, int[] moves, int count) {
+        recordResult();
+        resultRecorded = false;
+        setSize(newSize);
+        int area = newSize * newSize;
+        if (count == 0) {
+            gridHistory.reset(cells, 0, score, 0, highScore);
+        } else {
+            gridHistory.reset(boards, 0, scores[0], moves[0], highScore);
+            for (int i = 1; i < count; i++) {
+                gridHistory.push(boards, i * area, scores[i], moves[i]);
+            }
+        }
+        spawner = newSpawner;
+        currScore = score;
+        moveCount = gridHistory.moves();
+        grid.copyFrom(cells);
+        gridChanged();
+        updateHighestScore();
+        if (journal != null) {
+            journal.recordRestart();
+        }
     }
 
     /**
@@ -130,8 +468,9 @@ public class TwentyFortyEight {
      * @return int[][] storing the values on the board
      */
     public int[][] convertBoard(Tile[][] b) {
-        int[][] converted = new int[4][4];
+        int[][] converted = new int[b.length][];
         for (int i = 0; i < b.length; i++) {
+            converted[i] = new int[b[i].length];
             for (int j = 0; j < b[i].length; j++) {
                 converted[i][j] = b[i][j].getValue();
             }
@@ -145,8 +484,9 @@ public class TwentyFortyEight {
      * @return Tile[][] storing the values on the board
      */
     public Tile[][] convertIntArray(int[][] b) {
-        Tile[][] converted = new Tile[4][4];
+        Tile[][] converted = new Tile[b.length][];
         for (int i = 0; i < b.length; i++) {
+            converted[i] = new Tile[b[i].length];
             for (int j = 0; j < b[i].length; j++) {
                 converted[i][j] = new Tile();
                 converted[i][j].setValue(b[i][j]);
@@ -156,19 +496,19 @@ public class TwentyFortyEight {
     }
 
     /**
-     * Iterates through the 2D array and adds up the number of empty tiles on the board
+     * Counts the number of empty tiles on the board
      * @return number of empty tiles on board
      */
     public int numEmptyTile() {
-        int ctr = 0;
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (board[i][j].isEmpty()) {
-                    ctr ++;
-                }
-            }
-        }
-        return ctr;
+        return grid == null ? Long.bitCount(freeCells) : grid.emptyCount();
+    }
+
+    /**
+     * Getter for the number of moves made in this game
+     * @return moves that changed the board, less the ones undone
+     */
+    public int getMoveCount() {
+        return moveCount;
     }
 
     /**
@@ -180,39 +520,104 @@ public class TwentyFortyEight {
     }
 
     /**
-     * Getter for the entire 2D-array (Tile[][]) of the board
+     * Getter for the entire 2D-array (Tile[][]) of the board. The tiles are a view of the game's
+     * board that is refreshed when this is called after a change, so setting their values does
+     * not change the game.
      * @return board
      */
     public Tile[][] getBoard() {
+        if (board == null) {
+            board = new Tile[size][size];
+            for (int i = 0; i < board.length; i++) {
+                for (int j = 0; j < board[i].length; j++) {
+                    board[i][j] = new Tile();
+                }
+            }
+        }
+        if (boardStale) {
+            if (grid == null) {
+                BitBoard.copyInto(bits, board);
+            } else {
+                for (int i = 0; i < size; i++) {
+                    for (int j = 0; j < size; j++) {
+                        board[i][j].setExponent(grid.getExponent(i, j));
+                    }
+                }
+            }
+            boardStale = false;
+        }
         return board;
     }
 
+    /**
+     * Getter for the number of cells in a row of the board
+     * @return size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Getter for the exponent of one cell, on a board of any size
+     * @param row row of the cell
+     * @param col column of the cell
+     * @return log2 of the tile value, or 0 if the cell is empty
+     */
+    public int getExponent(int row, int col) {
+        return grid == null ? BitBoard.getExponent(bits, row, col) : grid.getExponent(row, col);
+    }
+
+    /**
+     * Copies the exponents of every cell, on a board of any size.
+     * @param out receives size * size exponents, cell (row, col) at row * size + col
+     */
+    public void copyExponents(byte[] out) {
+        if (grid == null) {
+            for (int k = 0; k < BitBoard.SIZE * BitBoard.SIZE; k++) {
+                out[k] = (byte) ((bits >>> (k << 2)) & 0xF);
+            }
+        } else {
+            grid.copyTo(out);
+        }
+    }
+
+    /**
+     * Getter for the packed 64-bit form of the board, see BitBoard.
+     * @return the board packed into a long
+     * @throws IllegalStateException if the board is not 4x4
+     */
+    public long getBits() {
+        if (grid != null) {
+            throw new IllegalStateException("Only a 4x4 board has a packed form");
+        }
+        return bits;
+    }
+
     /**
      * Getter for the highestScore value
-     * @return maximum score from historyScores
+     * @return maximum score from the undo history
      */
     public int getHighestScore() {
         return highestScore;
     }
 
     /**
-     * Iterates through the 2D-array board and return the tile with the highest value.
-     * @return highest value in the 4x4 tile
+     * Returns the value of the highest tile on the board.
+     * @return highest value on the board
      */
     public int getHighestValue() {
-        int highest = 0;
-        for (int i = 0; i < board.length; i++) {
-            int highestInRow = 0;
-            for (int j = 0; j < board[i].length; j++) {
-                if (board[i][j].getValue() >= highestInRow) {
-                    highestInRow = board[i][j].getValue();
-                }
-            }
-            if (highestInRow >= highest) {
-                highest = highestInRow;
-            }
+        return BitBoard.toValue(maxExponent);
+    }
+
+    /**
+     * Getter for the number of pairs of neighboring tiles with the same value
+     * @return mergeable pairs in rows and columns
+     */
+    public int getMergeablePairs() {
+        if (mergeablePairs < 0) {
+            mergeablePairs = grid.mergeablePairs();
         }
-        return highest;
+        return mergeablePairs;
     }
 
     /**
@@ -220,31 +625,102 @@ public class TwentyFortyEight {
      * @return random number of either 2 or 4
      */
     public int generateRandomNumber() {
-        Random rand = new Random();
-        int num = rand.nextInt(9);
-        if (num <= 1) {
-            return 4; // 20% chance of generating a new 4
-        } else {
-            return 2; // 80% chance of generating a new 2
-        }
+        return 1 << spawner.nextExponent(); // 2 in 9 chance of a 4, 7 in 9 chance of a 2
     }
 
     /**
-     * Sets the value of a specific tile that's originally empty to be the random value generated
-     * by the generateRandomNumber() class.
+     * Sets the value of a random empty tile to a new 2 or 4. The empty tile is picked from the
+     * free cells kept up to date by every move, so this takes the same time on any board.
      */
     public void generateNewTile() {
-        if (numEmptyTile() != 0) {
-            Random rand = new Random();
-            while (true) {
-                int randX = rand.nextInt(size);
-                int randY = rand.nextInt(size);
-                if (board[randX][randY].isEmpty()) {
-                    board[randX][randY].setValue(generateRandomNumber());
-                    return;
-                }
+        spawnTile();
+        if (journal != null) {
+            journal.recordSpawn();
+        }
+    }
+
+    /**
+     * Spawns a new tile on the board of either engine.
+     */
+    private void spawnTile() {
+        if (grid != null) {
+            spawnGridTile();
+            return;
+        }
+        bits = spawner.spawn(bits, freeCells);
+        if (spawner.getLastCell() >= 0) {
+            freeCells &= ~(1L << (spawner.getLastCell() << 2));
+            updateStatus();
+            if (metrics != null) {
+                metrics.spawned();
+            }
+        }
+        boardStale = true;
+    }
+
+    /**
+     * Spawns a new tile on a GridBoard.
+     * @return cell of the new tile, or -1 if the board is full
+     */
+    private int spawnGridTile() {
+        int cell = grid.spawn(spawner);
+        if (cell >= 0) {
+            gridChanged();
+            if (metrics != null) {
+                metrics.spawned();
             }
         }
+        return cell;
+    }
+
+    /**
+     * Getter for the spawner that places new tiles
+     * @return spawner
+     */
+    public TileSpawner getSpawner() {
+        return spawner;
+    }
+
+    /**
+     * Replaces the spawner that places new tiles, for example to replay a seeded game.
+     * @param spawner source of new tiles, owned by this game from now on
+     */
+    public void setSpawner(TileSpawner spawner) {
+        this.spawner = spawner;
+        if (journal != null) {
+            journal.recordRestart();
+        }
+    }
+
+    /**
+     * Replaces the packed board and recomputes the free-cell mask from it.
+     */
+    private void setBits(long newBits) {
+        bits = newBits;
+        freeCells = BitBoard.emptyMask(newBits);
+        updateStatus();
+        boardStale = true;
+    }
+
+    /**
+     * Refreshes the highest tile, the mergeable pairs and the game-over flag after the board
+     * changed. These are a few table lookups and bit operations on the packed board.
+     */
+    private void updateStatus() {
+        maxExponent = BitBoard.maxExponent(bits);
+        mergeablePairs = BitBoard.mergeablePairs(bits);
+        gameOver = freeCells == 0 && (mergeablePairs == 0 || BitBoard.legalMoves(bits) == 0);
+    }
+
+    /**
+     * Refreshes the status after a GridBoard changed. The highest tile is kept by the GridBoard,
+     * and the board is only scanned for mergeable pairs once it is full.
+     */
+    private void gridChanged() {
+        maxExponent = grid.maxExponent();
+        mergeablePairs = -1;
+        gameOver = grid.emptyCount() == 0 && (getMergeablePairs() == 0 || grid.legalMoves() == 0);
+        boardStale = true;
     }
 
     /**
@@ -253,237 +729,148 @@ public class TwentyFortyEight {
      * higher than the precious record.
      */
     public void updateHighestScore() {
-        int highest = 0;
-        for (int score: historyScores) {
-            if (score >= highest) {
-                highest = score;
-            }
-        }
-        if (highest >= currScore) {
-            highestScore = highest;
-        } else {
-            highestScore = currScore;
+        int best = grid == null ? history.bestScore() : gridHistory.bestScore();
+        if (leaderboard != null) {
+            best = Math.max(best, leaderboard.bestScore(size));
         }
+        highestScore = Math.max(best, currScore);
     }
 
     /**
      * Reaction of the board when the user hits the "A" key to shift numbers to the left.
      *
-     * The logic goes as follows:
-     * 1. Move all pieces to the left side of the board where there are empty spaces.
-     * 2. Add neighboring tiles of same value and changing the value of whichever tile has less
-     * column number (more on the left side) to the sum, change the value of whichever tile has
-     * more column number (more on the right side) to 0, or the next tile to the right.
-     * 3. Move the tiles that just changed their values to the left side of the board where new
-     * empty spaces are created.
+     * Tiles slide over empty spaces toward the left side of the board, and each pair of
+     * neighboring tiles with the same value merges once into the tile with less column number.
      */
     public void moveLeft() {
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (!board[i][j].isEmpty()) {
-                    int curr = board[i][j].getValue();
-                    int prev = j - 1;
-                    while (prev >= 0 && board[i][prev].isEmpty()) {
-                        board[i][prev].setValue(curr);
-                        board[i][prev + 1].clear();
-                        prev --;
-                    }
-                }
-            }
-        }
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (j + 1 < board[i].length
-                        && (board[i][j].equals(board[i][j + 1]))
-                        && (!board[i][j].isEmpty() || !board[i][j + 1].isEmpty())) {
-                    board[i][j].merge(board[i][j + 1]);
-                    board[i][j + 1].clear();
-                    currScore += board[i][j].getValue();
-                }
-            }
-        }
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (!board[i][j].isEmpty()) {
-                    int curr = board[i][j].getValue();
-                    int prev = j - 1;
-                    while (prev >= 0 && board[i][prev].isEmpty()) {
-                        board[i][prev].setValue(curr);
-                        board[i][prev + 1].clear();
-                        prev --;
-                    }
-                }
-            }
-        }
-        historyScores.addLast(currScore);
-        updateHighestScore();
-        generateNewTile();
-        boardList.addLast(convertBoard(board));
+        move(Direction.LEFT);
     }
 
     /**
      * Reaction of the board when the user hits the "D" key to shift numbers to the right.
      *
-     * The logic goes as follows:
-     * 1. Move all pieces to the right side of the board where there are empty spaces.
-     * 2. Add neighboring tiles of same value and changing the value of whichever tile has more
-     * column number (more on the right side) to the sum, change the value of whichever tile has
-     * less column number (more on the left side) to 0, or the next tile to the left.
-     * 3. Move the tiles that just changed their values to the right side of the board where new
-     * empty spaces are created.
+     * Tiles slide over empty spaces toward the right side of the board, and each pair of
+     * neighboring tiles with the same value merges once into the tile with more column number.
      */
     public void moveRight() {
-        for (int i = board.length - 1; i >= 0; i--) {
-            for (int j = board[i].length - 1; j >= 0; j--) {
-                if (!board[i][j].isEmpty()) {
-                    int curr = board[i][j].getValue();
-                    int prev = j + 1;
-                    while (prev <= board[i].length - 1 && board[i][prev].isEmpty()) {
-                        board[i][prev].setValue(curr);
-                        board[i][prev - 1].clear();
-                        prev ++;
-                    }
-                }
-            }
-        }
-        for (int i = board.length - 1; i >= 0; i--) {
-            for (int j = board[i].length - 1; j >= 0; j--) {
-                if (j + 1 < board[i].length
-                        && (board[i][j].equals(board[i][j + 1]))
-                        && (!board[i][j].isEmpty() || !board[i][j + 1].isEmpty())) {
-                    board[i][j + 1].merge(board[i][j]);
-                    board[i][j].clear();
-                    currScore += board[i][j + 1].getValue();
-                }
-            }
-        }
-        for (int i = board.length - 1; i >= 0; i--) {
-            for (int j = board[i].length - 1; j >= 0; j--) {
-                if (!board[i][j].isEmpty()) {
-                    int curr = board[i][j].getValue();
-                    int prev = j + 1;
-                    while (prev <= board[i].length - 1 && board[i][prev].isEmpty()) {
-                        board[i][prev].setValue(curr);
-                        board[i][prev - 1].clear();
-                        prev ++;
-                    }
-                }
-            }
-        }
-        historyScores.addLast(currScore);
-        updateHighestScore();
-        generateNewTile();
-        boardList.addLast(convertBoard(board));
+        move(Direction.RIGHT);
     }
 
     /**
      * Reaction of the board when the user hits the "W" key to shift numbers upward.
      *
-     * The logic goes as follows:
-     * 1. Move all pieces to the upper side of the board where there are empty spaces.
-     * 2. Add neighboring tiles of same value and changing the value of whichever tile has less
-     * row number (more on the upper side) to the sum, change the value of whichever tile has
-     * more row number (more on the lower side) to 0, or the next tile to the lower side.
-     * 3. Move the tiles that just changed their values to the upper side of the board where new
-     * empty spaces are created.
+     * Tiles slide over empty spaces toward the upper side of the board, and each pair of
+     * neighboring tiles with the same value merges once into the tile with less row number.
      */
     public void moveUp() {
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (!board[i][j].isEmpty()) {
-                    int curr = board[i][j].getValue();
-                    int prev = i - 1;
-                    while (prev >= 0 && board[prev][j].isEmpty()) {
-                        board[prev][j].setValue(curr);
-                        board[prev + 1][j].clear();
-                        prev --;
-                    }
-                }
-            }
-        }
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (i + 1 < board[i].length
-                        && (board[i][j].equals(board[i + 1][j]))
-                        && (!board[i][j].isEmpty() || !board[i + 1][j].isEmpty())) {
-                    board[i][j].merge(board[i + 1][j]);
-                    board[i + 1][j].clear();
-                    currScore += board[i][j].getValue();
-                }
-            }
-        }
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (!board[i][j].isEmpty()) {
-                    int curr = board[i][j].getValue();
-                    int prev = i - 1;
-                    while (prev >= 0 && board[prev][j].isEmpty()) {
-                        board[prev][j].setValue(curr);
-                        board[prev + 1][j].clear();
-                        prev --;
-                    }
-                }
-            }
-        }
-        historyScores.addLast(currScore);
-        updateHighestScore();
-        generateNewTile();
-        boardList.addLast(convertBoard(board));
+        move(Direction.UP);
     }
 
     /**
      * Reaction of the board when the user hits the "S" key to shift numbers downward.
      *
-     * The logic goes as follows:
-     * 1. Move all pieces to the lower side of the board where there are empty spaces.
-     * 2. Add neighboring tiles of same value and changing the value of whichever tile has more
-     * row number (more on the lower side) to the sum, change the value of whichever tile has
-     * less row number (more on the upper side) to 0, or the next tile to the upper side.
-     * 3. Move the tiles that just changed their values to the lower side of the board where new
-     * empty spaces are created.
+     * Tiles slide over empty spaces toward the lower side of the board, and each pair of
+     * neighboring tiles with the same value merges once into the tile with more row number.
      */
     public void moveDown() {
-        for (int i = board.length - 1; i >= 0; i--) {
-            for (int j = board[i].length - 1; j >= 0; j--) {
-                if (!board[i][j].isEmpty()) {
-                    int curr = board[i][j].getValue();
-                    int prev = i + 1;
-                    while (prev <= board.length - 1 && board[prev][j].isEmpty()) {
-                        board[prev][j].setValue(curr);
-                        board[prev - 1][j].clear();
-                        prev ++;
-                    }
-                }
+        move(Direction.DOWN);
+    }
+
+    /**
+     * Checks if a move would change the board, without making it or copying the board.
+     * @param direction where the tiles would go
+     * @return true if some tile would slide or merge
+     */
+    public boolean canMove(Direction direction) {
+        return grid == null ? BitBoard.canMove(bits, direction) : grid.canMove(direction);
+    }
+
+    /**
+     * The moves that would change the board. The set is empty exactly when the game is over.
+     * @return legal directions
+     */
+    public EnumSet<Direction> legalMoves() {
+        int mask = grid == null ? BitBoard.legalMoves(bits) : grid.legalMoves();
+        EnumSet<Direction> moves = EnumSet.noneOf(Direction.class);
+        for (int d = 0; d < 4; d++) {
+            if ((mask & (1 << d)) != 0) {
+                moves.add(Direction.of(d));
             }
         }
-        for (int i = board.length - 1; i >= 0; i--) {
-            for (int j = board[i].length - 1; j >= 0; j--) {
-                if (i + 1 < board[i].length
-                        && (board[i][j].equals(board[i + 1][j]))
-                        && (!board[i][j].isEmpty() || !board[i + 1][j].isEmpty())) {
-                    board[i + 1][j].merge(board[i][j]);
-                    board[i][j].clear();
-                    currScore += board[i + 1][j].getValue();
-                }
+        return moves;
+    }
+
+    /**
+     * Shifts the board in the given direction using the packed BitBoard engine on a 4x4 board
+     * or the GridBoard engine otherwise, then records the new score, spawns a new tile and saves
+     * the board for undo. A move that changes nothing does none of that: no tile is spawned,
+     * nothing is saved for undo and the journal does not record it.
+     * @param direction where the tiles go
+     * @return which tiles moved where and where the new tile appeared; empty, with no new tile,
+     *         if nothing moved
+     */
+    public MoveDelta move(Direction direction) {
+        long start = metrics == null ? 0 : metrics.moveStarted();
+        if (grid != null) {
+            int emptyBefore = grid.emptyCount();
+            int points = grid.move(direction, slides);
+            if (!grid.lastMoveChanged()) {
+                return noOpMove(direction, start);
             }
-        }
-        for (int i = board.length - 1; i >= 0; i--) {
-            for (int j = board[i].length - 1; j >= 0; j--) {
-                if (!board[i][j].isEmpty()) {
-                    int curr = board[i][j].getValue();
-                    int prev = i + 1;
-                    while (prev <= board.length - 1 && board[prev][j].isEmpty()) {
-                        board[prev][j].setValue(curr);
-                        board[prev - 1][j].clear();
-                        prev ++;
-                    }
-                }
+            currScore += points;
+            moveCount++;
+            int count = grid.slideCount();
+            int merged = grid.emptyCount() - emptyBefore;
+            gridChanged();
+            int cell = spawnGridTile();
+            pushHistory();
+            updateHighestScore();
+            if (metrics != null) {
+                metrics.moveDone(direction, start, size, points, merged, true, getUndoSize());
+            }
+            if (journal != null) {
+                journal.recordMove(direction);
+            }
+            if (gameOver) {
+                recordResult();
             }
+            return MoveDelta.of(direction, size, slides, count, cell,
+                    cell < 0 ? 0 : grid.getExponent(cell));
         }
-        historyScores.addLast(currScore);
+        long before = bits;
+        long after = BitBoard.move(bits, direction);
+        if (after == before) {
+            return noOpMove(direction, start);
+        }
+        long freeBefore = freeCells;
+        int points = BitBoard.score(bits, direction);
+        currScore += points;
+        moveCount++;
+        setBits(after);
+        int merged = metrics == null ? 0 : Long.bitCount(freeCells) - Long.bitCount(freeBefore);
+        spawnTile();
+        history.push(bits, currScore, moveCount);
         updateHighestScore();
-        generateNewTile();
-        boardList.addLast(convertBoard(board));
+        if (metrics != null) {
+            metrics.moveDone(direction, start, size, points, merged, true, getUndoSize());
+        }
+        if (journal != null) {
+            journal.recordMove(direction);
+        }
+        if (gameOver) {
+            recordResult();
+        }
+        return MoveDelta.of(direction, before, spawner.getLastCell(), spawner.getLastExponent());
+    }
+
+    /**
+     * Finishes a move that changed nothing, which only counts in the metrics.
+     */
+    private MoveDelta noOpMove(Direction direction, long start) {
+        if (metrics != null) {
+            metrics.moveDone(direction, start, size, 0, 0, false, getUndoSize());
+        }
+        return MoveDelta.of(direction, size, NO_SLIDES, 0, -1, 0);
     }
 
     /**
@@ -492,23 +879,7 @@ public class TwentyFortyEight {
      * @return true if there are neighboring tiles still able to merge; false otherwise.
      */
     public boolean hasMergeableTiles() {
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                // checks if vertical neighbors have the same value
-                if (i < board.length - 1) {
-                    if (board[i][j].equals(board[i + 1][j])) {
-                        return true;
-                    }
-                }
-                // checks if horizontal neighbors have the same value
-                if (j < board[0].length - 1) {
-                    if (board[i][j].equals(board[i][j + 1])) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return getMergeablePairs() != 0;
     }
 
     /**
@@ -517,7 +888,7 @@ public class TwentyFortyEight {
      * @return true if the game is over; false otherwise.
      */
     public boolean isGameOver() {
-        return numEmptyTile() == 0 && !hasMergeableTiles();
+        return gameOver;
     }
 
     /**
@@ -536,9 +907,10 @@ public class TwentyFortyEight {
         } else {
             System.out.println("Join the numbers and get to the 2048 tile!");
         }
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                System.out.print(board[i][j] + "   ");
+        Tile[][] tiles = getBoard();
+        for (int i = 0; i < tiles.length; i++) {
+            for (int j = 0; j < tiles[i].length; j++) {
+                System.out.print(tiles[i][j] + "   ");
             }
             System.out.println();
         }
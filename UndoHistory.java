@@ -0,0 +1,355 @@
+package org.cis120.twentyfortyeight;
+
+import java.util.Arrays;
+
+/**
+ * The past states of a game, newest on top, used to undo moves.
+ *
+ * Every entry is a packed board (see BitBoard), a score and the number of moves made to reach
+ * the board. The history also remembers the best score of all entries ever pushed and not undone,
+ * including entries that have since been dropped, so the high score never needs a scan.
+ *
+ * With a fixed depth the entries live in a ring buffer of primitives: pushing overwrites the
+ * oldest entry once the buffer is full. The buffer starts small and doubles until it reaches the
+ * depth, so a game that was barely played takes little memory, and nothing is allocated once it
+ * is full. With UNLIMITED depth every entry is kept, stored as a small delta against the entry
+ * before it (the changed nibbles of the board and the score and move differences), which usually
+ * takes about 10 bytes per move. In both modes push and pop take constant time.
+ */
+public class UndoHistory {
+
+    public static final int UNLIMITED = 0;
+
+    private static final int INITIAL_RING = 16;
+
+    private final int capacity;
+
+    // Ring buffer, only used with a fixed depth
+    private long[] boards;
+    private int[] scores;
+    private int[] bestScores;
+    private int[] moveCounts;
+    private int head;
+
+    // Delta records, only used with UNLIMITED depth. Every record ends with its own length so
+    // that the last one can be read without scanning from the start.
+    private byte[] deltas;
+    private int deltaLength;
+    private long decodedChange;
+    private int decodedScoreDelta;
+    private int decodedBestDelta;
+    private int decodedMovesDelta;
+
+    private int size;
+    private long topBoard;
+    private int topScore;
+    private int topBest;
+    private int topMoves;
+
+    /**
+     * Creates an empty history.
+     * @param capacity how many entries are kept, or UNLIMITED to keep every entry
+     */
+    public UndoHistory(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.capacity = capacity;
+        if (capacity == UNLIMITED) {
+            boards = null;
+            scores = null;
+            bestScores = null;
+            moveCounts = null;
+            deltas = new byte[256];
+        } else {
+            int initial = Math.min(capacity, INITIAL_RING);
+            boards = new long[initial];
+            scores = new int[initial];
+            bestScores = new int[initial];
+            moveCounts = new int[initial];
+        }
+    }
+
+    /**
+     * Getter for the maximum number of entries
+     * @return capacity, or UNLIMITED
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Getter for the number of entries currently kept
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for the board on top of the history
+     * @return packed board of the newest entry
+     */
+    public long board() {
+        return topBoard;
+    }
+
+    /**
+     * Getter for the score on top of the history
+     * @return score of the newest entry
+     */
+    public int score() {
+        return topScore;
+    }
+
+    /**
+     * Getter for the move count on top of the history
+     * @return moves made to reach the board of the newest entry
+     */
+    public int moves() {
+        return topMoves;
+    }
+
+    /**
+     * Getter for the best score of every entry that has not been undone, including entries
+     * that no longer fit in the history
+     * @return best score, or 0 for an empty history
+     */
+    public int bestScore() {
+        return topBest;
+    }
+
+    /**
+     * Adds a new entry on top.
+     * @param board packed board
+     * @param score score that goes with the board
+     * @param moves moves made to reach the board
+     */
+    public void push(long board, int score, int moves) {
+        int best = size == 0 ? score : Math.max(topBest, score);
+        if (capacity == UNLIMITED) {
+            if (size > 0) {
+                writeDelta(topBoard ^ board, score - topScore, best - topBest, moves - topMoves);
+            }
+        } else {
+            if (size == boards.length && size < capacity) {
+                // Not full yet, so the entries are in order from index 0 to head
+                int grown = Math.min(capacity, size * 2);
+                boards = Arrays.copyOf(boards, grown);
+                scores = Arrays.copyOf(scores, grown);
+                bestScores = Arrays.copyOf(bestScores, grown);
+                moveCounts = Arrays.copyOf(moveCounts, grown);
+            }
+            head = size == 0 ? 0 : (head + 1) % boards.length;
+            boards[head] = board;
+            scores[head] = score;
+            bestScores[head] = best;
+            moveCounts[head] = moves;
+        }
+        if (size < capacity || capacity == UNLIMITED) {
+            size++;
+        }
+        topBoard = board;
+        topScore = score;
+        topBest = best;
+        topMoves = moves;
+    }
+
+    /**
+     * Removes the top entry, unless it is the only one left.
+     * @return true if an entry was removed
+     */
+    public boolean pop() {
+        if (size <= 1) {
+            return false;
+        }
+        size--;
+        if (capacity == UNLIMITED) {
+            readDelta();
+        } else {
+            head = (head - 1 + boards.length) % boards.length;
+            topBoard = boards[head];
+            topScore = scores[head];
+            topBest = bestScores[head];
+            topMoves = moveCounts[head];
+        }
+        return true;
+    }
+
+    /**
+     * Copies the newest entries into the given arrays, oldest first, without changing the
+     * history.
+     * @param boardsOut receives the packed boards
+     * @param scoresOut receives the scores
+     * @param movesOut receives the move counts
+     * @param max most entries to copy
+     * @return number of entries copied, the smallest of max, size() and the array lengths
+     */
+    public int copyNewest(long[] boardsOut, int[] scoresOut, int[] movesOut, int max) {
+        int count = Math.min(Math.min(max, size), Math.min(boardsOut.length,
+                Math.min(scoresOut.length, movesOut.length)));
+        long board = topBoard;
+        int score = topScore;
+        int moves = topMoves;
+        int ring = head;
+        int position = deltaLength;
+        for (int i = count - 1; i >= 0; i--) {
+            if (capacity == UNLIMITED) {
+                boardsOut[i] = board;
+                scoresOut[i] = score;
+                movesOut[i] = moves;
+                if (i > 0) {
+                    position = decodeDelta(position);
+                    board ^= decodedChange;
+                    score -= decodedScoreDelta;
+                    moves -= decodedMovesDelta;
+                }
+            } else {
+                boardsOut[i] = boards[ring];
+                scoresOut[i] = scores[ring];
+                movesOut[i] = moveCounts[ring];
+                ring = (ring - 1 + boards.length) % boards.length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        size = 0;
+        head = 0;
+        deltaLength = 0;
+        topBoard = 0;
+        topScore = 0;
+        topBest = 0;
+        topMoves = 0;
+    }
+
+    /**
+     * Removes every entry and starts over from a single one.
+     * @param board packed board
+     * @param score score that goes with the board
+     * @param moves moves made to reach the board
+     * @param bestScore best score to remember from before this entry
+     */
+    public void reset(long board, int score, int moves, int bestScore) {
+        clear();
+        push(board, score, moves);
+        topBest = Math.max(score, bestScore);
+        if (capacity != UNLIMITED) {
+            bestScores[head] = topBest;
+        }
+    }
+
+    /**
+     * Appends one record: a 16-bit mask of changed cells, the changed nibbles two per byte, the
+     * score, best score and move count differences as varints, and finally the record length.
+     */
+    private void writeDelta(long changed, int scoreDelta, int bestDelta, int movesDelta) {
+        if (deltaLength + 32 > deltas.length) {
+            deltas = Arrays.copyOf(deltas, deltas.length * 2);
+        }
+        int start = deltaLength;
+        int mask = 0;
+        for (int k = 0; k < 16; k++) {
+            if (((changed >>> (k << 2)) & 0xF) != 0) {
+                mask |= 1 << k;
+            }
+        }
+        deltas[deltaLength++] = (byte) mask;
+        deltas[deltaLength++] = (byte) (mask >>> 8);
+        int nibbles = 0;
+        for (int k = 0; k < 16; k++) {
+            if ((mask & (1 << k)) != 0) {
+                int nibble = (int) (changed >>> (k << 2)) & 0xF;
+                if ((nibbles & 1) == 0) {
+                    deltas[deltaLength++] = (byte) nibble;
+                } else {
+                    deltas[deltaLength - 1] |= (byte) (nibble << 4);
+                }
+                nibbles++;
+            }
+        }
+        writeVarint((scoreDelta << 1) ^ (scoreDelta >> 31));
+        writeVarint(bestDelta);
+        writeVarint((movesDelta << 1) ^ (movesDelta >> 31));
+        deltas[deltaLength] = (byte) (deltaLength - start);
+        deltaLength++;
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            deltas[deltaLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        deltas[deltaLength++] = (byte) value;
+    }
+
+    /**
+     * Removes the last record and applies it backwards to the top entry.
+     */
+    private void readDelta() {
+        deltaLength = decodeDelta(deltaLength);
+        topBoard ^= decodedChange;
+        topScore -= decodedScoreDelta;
+        topBest -= decodedBestDelta;
+        topMoves -= decodedMovesDelta;
+    }
+
+    /**
+     * Decodes the record that ends right before the given position into the decoded fields.
+     * @param end position just after the record's length byte
+     * @return position where the record starts
+     */
+    private int decodeDelta(int end) {
+        int start = end - 1 - (deltas[end - 1] & 0xFF);
+        int position = start;
+        int mask = (deltas[position] & 0xFF) | (deltas[position + 1] & 0xFF) << 8;
+        position += 2;
+        long changed = 0;
+        int nibbles = 0;
+        for (int k = 0; k < 16; k++) {
+            if ((mask & (1 << k)) != 0) {
+                int packed = deltas[position] & 0xFF;
+                long nibble = (nibbles & 1) == 0 ? packed & 0xF : packed >>> 4;
+                if ((nibbles & 1) == 1) {
+                    position++;
+                }
+                changed |= nibble << (k << 2);
+                nibbles++;
+            }
+        }
+        if ((nibbles & 1) == 1) {
+            position++;
+        }
+        int zigzag = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = deltas[position++];
+            zigzag |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        int bestDelta = 0;
+        shift = 0;
+        do {
+            b = deltas[position++];
+            bestDelta |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        int movesZigzag = 0;
+        shift = 0;
+        do {
+            b = deltas[position++];
+            movesZigzag |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        decodedChange = changed;
+        decodedScoreDelta = (zigzag >>> 1) ^ -(zigzag & 1);
+        decodedBestDelta = bestDelta;
+        decodedMovesDelta = (movesZigzag >>> 1) ^ -(movesZigzag & 1);
+        return start;
+    }
+}
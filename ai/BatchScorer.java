@@ -0,0 +1,19 @@
+package org.cis120.twentyfortyeight.ai;
+
+/**
+ * Scores many boards at once from an Evaluator's row tables. The scalar loop in Evaluator is
+ * always there; a faster implementation is picked up when its class can be loaded, see
+ * Evaluator.isVectorized().
+ */
+public interface BatchScorer {
+
+    /**
+     * Scores boards by summing the table entries of their rows and columns.
+     * @param inner table for the two middle rows and columns, indexed by the 16-bit line
+     * @param edge table for the top and bottom rows and the outer columns
+     * @param boards packed boards
+     * @param count number of boards to score, from the start of the array
+     * @param out receives the value of each board
+     */
+    void score(float[] inner, float[] edge, long[] boards, int count, float[] out);
+}
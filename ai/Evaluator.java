@@ -0,0 +1,224 @@
+package org.cis120.twentyfortyeight.ai;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.cis120.twentyfortyeight.BitBoard;
+
+/**
+ * A weighted sum of Heuristic terms, plus a constant bias per line, that rates 4x4 boards.
+ *
+ * Every term depends on one line of four cells only, so the weighted sum is computed once for
+ * each of the 65536 possible lines when the Evaluator is built. Rating a board is then eight
+ * table lookups: four rows, and four columns read from the transposed board. Terms that only
+ * apply to the outer lines (Heuristic.CORNER) get a second table for those.
+ *
+ * Boards can also be rated in batches, by a scalar loop unless the system property
+ * twentyfortyeight.vector is true, the JVM runs with --add-modules jdk.incubator.vector and the
+ * vector sources are on the class path. Then batches go through VectorScorer, which gathers the
+ * table entries of several boards per operation. On JDK 17 its gathers are not compiled to gather
+ * instructions and it is slower than the scalar loop, which is why it has to be asked for. Batch
+ * values are summed in float and may differ from evaluate() in the last bits.
+ *
+ * An Evaluator is immutable and can be shared by any number of threads.
+ */
+public final class Evaluator {
+
+    public static final String VECTOR_PROPERTY = "twentyfortyeight.vector";
+
+    private static final String VECTOR_SCORER =
+            "org.cis120.twentyfortyeight.vector.VectorScorer";
+    private static final int LINES = 1 << 16;
+    private static final BatchScorer SCALAR = Evaluator::scoreScalar;
+    private static final BatchScorer BATCH = loadBatchScorer();
+
+    /**
+     * The weights Expectimax is tuned with. The bias keeps every board above 0, which is what a
+     * lost board is worth to the search.
+     */
+    public static final Evaluator DEFAULT = new Evaluator(Map.of(
+            Heuristic.MONOTONICITY, 47f,
+            Heuristic.EMPTY, 270f,
+            Heuristic.MERGES, 700f,
+            Heuristic.TILE_SUM, 11f), 200000);
+
+    private final float[] weights = new float[Heuristic.values().length];
+    private final float bias;
+    private final float[] inner = new float[LINES];
+    private final float[] edge = new float[LINES];
+
+    /**
+     * Builds the row tables of a set of weights.
+     * @param weights weight of each term; terms not in the map are left out
+     * @param bias constant added for every row and column
+     */
+    public Evaluator(Map<Heuristic, ? extends Number> weights, double bias) {
+        for (Map.Entry<Heuristic, ? extends Number> entry : weights.entrySet()) {
+            this.weights[entry.getKey().ordinal()] = entry.getValue().floatValue();
+        }
+        this.bias = (float) bias;
+        int[] line = new int[BitBoard.SIZE];
+        for (int row = 0; row < LINES; row++) {
+            for (int j = 0; j < BitBoard.SIZE; j++) {
+                line[j] = (row >>> (j << 2)) & 0xF;
+            }
+            float innerValue = this.bias;
+            float edgeValue = this.bias;
+            for (Heuristic heuristic : Heuristic.values()) {
+                float weight = this.weights[heuristic.ordinal()];
+                if (weight == 0) {
+                    continue;
+                }
+                float term = weight * heuristic.score(line);
+                edgeValue += term;
+                if (!heuristic.edgeOnly()) {
+                    innerValue += term;
+                }
+            }
+            inner[row] = innerValue;
+            edge[row] = edgeValue;
+        }
+    }
+
+    /**
+     * Parses weights written as term=weight pairs separated by commas, such as
+     * "empty=270,merges=700,corner=50,bias=1000". Term names are those of Heuristic in any case.
+     * @param spec weights to parse
+     * @return an evaluator with those weights, and no bias unless one is given
+     */
+    public static Evaluator parse(String spec) {
+        Map<Heuristic, Float> weights = new EnumMap<>(Heuristic.class);
+        double bias = 0;
+        for (String pair : spec.split(",")) {
+            String[] parts = pair.trim().split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected term=weight: " + pair);
+            }
+            String name = parts[0].trim().toUpperCase();
+            float weight = Float.parseFloat(parts[1].trim());
+            if (name.equals("BIAS")) {
+                bias = weight;
+            } else {
+                weights.put(Heuristic.valueOf(name), weight);
+            }
+        }
+        return new Evaluator(weights, bias);
+    }
+
+    /**
+     * Returns an evaluator like this one with one weight changed.
+     * @param heuristic term to reweigh
+     * @param weight its new weight, 0 to leave it out
+     * @return a new evaluator
+     */
+    public Evaluator withWeight(Heuristic heuristic, double weight) {
+        Map<Heuristic, Float> copy = new EnumMap<>(Heuristic.class);
+        for (Heuristic h : Heuristic.values()) {
+            copy.put(h, weights[h.ordinal()]);
+        }
+        copy.put(heuristic, (float) weight);
+        return new Evaluator(copy, bias);
+    }
+
+    /**
+     * Getter for the weight of a term
+     * @param heuristic term
+     * @return its weight, 0 if it is left out
+     */
+    public double getWeight(Heuristic heuristic) {
+        return weights[heuristic.ordinal()];
+    }
+
+    /**
+     * Getter for the constant added for every row and column
+     * @return bias per line
+     */
+    public double getBias() {
+        return bias;
+    }
+
+    /**
+     * Rates a board.
+     * @param board packed board
+     * @return weighted sum of the terms over all rows and columns, higher is better
+     */
+    public double evaluate(long board) {
+        long transposed = BitBoard.transpose(board);
+        double value = edge[BitBoard.getRow(board, 0)];
+        value += inner[BitBoard.getRow(board, 1)];
+        value += inner[BitBoard.getRow(board, 2)];
+        value += edge[BitBoard.getRow(board, 3)];
+        value += edge[BitBoard.getRow(transposed, 0)];
+        value += inner[BitBoard.getRow(transposed, 1)];
+        value += inner[BitBoard.getRow(transposed, 2)];
+        value += edge[BitBoard.getRow(transposed, 3)];
+        return value;
+    }
+
+    /**
+     * Rates many boards at once.
+     * @param boards packed boards
+     * @param count number of boards to rate, from the start of the array
+     * @param out receives the value of each board
+     */
+    public void evaluate(long[] boards, int count, float[] out) {
+        if (count < 0 || count > boards.length || count > out.length) {
+            throw new IllegalArgumentException("Count out of range: " + count);
+        }
+        BATCH.score(inner, edge, boards, count, out);
+    }
+
+    /**
+     * Checks which batch scorer is in use.
+     * @return true if batches are scored with the vector API
+     */
+    public static boolean isVectorized() {
+        return BATCH != SCALAR;
+    }
+
+    private static void scoreScalar(float[] inner, float[] edge, long[] boards, int count,
+                                    float[] out) {
+        for (int i = 0; i < count; i++) {
+            long board = boards[i];
+            long transposed = BitBoard.transpose(board);
+            out[i] = edge[(int) (board & 0xFFFF)] + inner[(int) (board >>> 16 & 0xFFFF)]
+                    + inner[(int) (board >>> 32 & 0xFFFF)] + edge[(int) (board >>> 48)]
+                    + edge[(int) (transposed & 0xFFFF)]
+                    + inner[(int) (transposed >>> 16 & 0xFFFF)]
+                    + inner[(int) (transposed >>> 32 & 0xFFFF)]
+                    + edge[(int) (transposed >>> 48)];
+        }
+    }
+
+    /**
+     * Loads VectorScorer if it is asked for and available, and checks it against the scalar loop
+     * before trusting it.
+     */
+    private static BatchScorer loadBatchScorer() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY))) {
+            return SCALAR;
+        }
+        try {
+            BatchScorer vector = Class.forName(VECTOR_SCORER).asSubclass(BatchScorer.class)
+                    .getDeclaredConstructor().newInstance();
+            float[] inner = new float[LINES];
+            float[] edge = new float[LINES];
+            for (int i = 0; i < LINES; i++) {
+                inner[i] = i;
+                edge[i] = -2 * i;
+            }
+            long[] boards = new long[67];
+            for (int i = 0; i < boards.length; i++) {
+                boards[i] = i * 0x9E3779B97F4A7C15L;
+            }
+            float[] expected = new float[boards.length];
+            float[] actual = new float[boards.length];
+            scoreScalar(inner, edge, boards, boards.length, expected);
+            vector.score(inner, edge, boards, boards.length, actual);
+            return Arrays.equals(expected, actual) ? vector : SCALAR;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return SCALAR;
+        }
+    }
+}
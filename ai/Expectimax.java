@@ -0,0 +1,272 @@
+package org.cis120.twentyfortyeight.ai;
+
+import java.util.function.Consumer;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.Direction;
+import org.cis120.twentyfortyeight.TwentyFortyEight;
+
+/**
+ * Expectimax search over packed boards, rating the boards at its leaves with an Evaluator.
+ *
+ * Max nodes try every direction that changes the board. Chance nodes average over every empty
+ * cell, spawning a 2 or a 4 with the same odds as TwentyFortyEight.generateRandomNumber(). A
+ * branch is cut off and evaluated directly once the chance of reaching it drops below
+ * PROBABILITY_CUTOFF.
+ *
+ * The search deepens one move at a time until either the depth limit for the board or the time
+ * budget is reached, and returns the result of the deepest iteration that finished. The depth
+ * limit shrinks as the board empties out, since every empty cell multiplies the branching.
+ *
+ * Given a TranspositionTable, max nodes look their board up before searching it and store what
+ * they found, so positions reached by different move orders, or that are rotations or mirror
+ * images of each other, are only searched once. One table can be shared by the searchers of many
+ * threads. Searches leave the table's generation alone; its owner starts a new one per game.
+ *
+ * Interrupting the searching thread stops a search like running out of time does, and the
+ * search returns the deepest iteration it finished.
+ *
+ * An Expectimax keeps per-search counters, so one instance should only be used by one thread at
+ * a time.
+ */
+public class Expectimax {
+
+    public static final double PROBABILITY_CUTOFF = 0.0001;
+    public static final int DEFAULT_MAX_DEPTH = 6;
+
+    private static final double FOUR = TwentyFortyEight.FOUR_PROBABILITY;
+    private static final double TWO = 1 - FOUR;
+    // How often (in nodes) the clock is read
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private final int maxDepth;
+    private final TranspositionTable table;
+    private final Evaluator evaluator;
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+
+    /**
+     * Creates a searcher that looks at most DEFAULT_MAX_DEPTH moves ahead.
+     */
+    public Expectimax() {
+        this(DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Creates a searcher with a hard cap on the depth.
+     * @param maxDepth the most moves the search looks ahead, at least 1
+     */
+    public Expectimax(int maxDepth) {
+        this(maxDepth, null);
+    }
+
+    /**
+     * Creates a searcher that caches its results.
+     * @param maxDepth the most moves the search looks ahead, at least 1
+     * @param table cache of searched boards, may be shared with other searchers, or null
+     */
+    public Expectimax(int maxDepth, TranspositionTable table) {
+        this(maxDepth, table, Evaluator.DEFAULT);
+    }
+
+    /**
+     * Creates a searcher that rates the boards at its leaves with the given evaluator.
+     * @param maxDepth the most moves the search looks ahead, at least 1
+     * @param table cache of searched boards, or null; only share it between searchers that use
+     *              the same evaluator
+     * @param evaluator rates boards, should keep every board above 0
+     */
+    public Expectimax(int maxDepth, TranspositionTable table, Evaluator evaluator) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1");
+        }
+        this.maxDepth = maxDepth;
+        this.table = table;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Getter for the cache of searched boards
+     * @return the table, or null if results are not cached
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Picks the best move for the current state of a game.
+     * @param state game to look at; it is not modified
+     * @param timeBudgetMillis how long the search may take
+     * @return the suggested move and a report of the search
+     */
+    public SearchResult bestMove(TwentyFortyEight state, long timeBudgetMillis) {
+        return bestMove(state.getBits(), timeBudgetMillis);
+    }
+
+    /**
+     * Picks the best move for a packed board.
+     * @param board packed board, see BitBoard
+     * @param timeBudgetMillis how long the search may take
+     * @return the suggested move and a report of the search
+     */
+    public SearchResult bestMove(long board, long timeBudgetMillis) {
+        return bestMove(board, timeBudgetMillis, null);
+    }
+
+    /**
+     * Picks the best move for a packed board, reporting the result of every iteration that
+     * finishes as the search deepens.
+     * @param board packed board, see BitBoard
+     * @param timeBudgetMillis how long the search may take
+     * @param progress called on the searching thread after every finished iteration, or null
+     * @return the suggested move and a report of the search
+     */
+    public SearchResult bestMove(long board, long timeBudgetMillis,
+                                 Consumer<SearchResult> progress) {
+        long start = System.nanoTime();
+        deadline = start + timeBudgetMillis * 1000000L;
+        nodes = 0;
+        aborted = false;
+
+        Direction bestMove = null;
+        double bestValue = 0;
+        int completedDepth = 0;
+        int depthLimit = depthLimit(board);
+        for (int depth = 1; depth <= depthLimit && !aborted; depth++) {
+            Direction iterationMove = null;
+            double iterationValue = Double.NEGATIVE_INFINITY;
+            for (int d = 0; d < 4 && !aborted; d++) {
+                Direction direction = Direction.of(d);
+                long next = BitBoard.move(board, direction);
+                if (next == board) {
+                    continue;
+                }
+                double value = chance(next, depth - 1, 1.0);
+                if (value > iterationValue) {
+                    iterationValue = value;
+                    iterationMove = direction;
+                }
+            }
+            // The first iteration is only four evaluations, so it always finishes
+            if (!aborted || depth == 1) {
+                bestMove = iterationMove;
+                bestValue = iterationMove == null ? 0 : iterationValue;
+                completedDepth = depth;
+                if (progress != null) {
+                    progress.accept(new SearchResult(bestMove, bestValue, completedDepth, nodes,
+                            System.nanoTime() - start));
+                }
+            }
+            if (iterationMove == null) {
+                break;
+            }
+        }
+        return new SearchResult(bestMove, bestValue, completedDepth, nodes,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * How deep it is worth searching a board. Fewer empty cells means fewer spawn outcomes per
+     * chance node, so the search can afford to look further ahead.
+     * @param board packed board
+     * @return depth limit in moves, never above the cap given to the constructor
+     */
+    public int depthLimit(long board) {
+        int empty = BitBoard.emptyCount(board);
+        int depth;
+        if (empty >= 10) {
+            depth = 2;
+        } else if (empty >= 6) {
+            depth = 3;
+        } else if (empty >= 3) {
+            depth = 4;
+        } else {
+            depth = 5;
+        }
+        return Math.min(depth, maxDepth);
+    }
+
+    /**
+     * Expected value of a board right after a move, before the new tile appears.
+     */
+    private double chance(long board, int depth, double probability) {
+        if (depth == 0 || probability < PROBABILITY_CUTOFF) {
+            return evaluator.evaluate(board);
+        }
+        if (tick()) {
+            return 0;
+        }
+        int empty = BitBoard.emptyCount(board);
+        if (empty == 0) {
+            return evaluator.evaluate(board);
+        }
+        double twoProbability = probability * TWO / empty;
+        double fourProbability = probability * FOUR / empty;
+        double total = 0;
+        for (int k = 0; k < BitBoard.SIZE * BitBoard.SIZE; k++) {
+            int shift = k << 2;
+            if (((board >>> shift) & 0xF) == 0) {
+                total += TWO * max(board | (1L << shift), depth, twoProbability);
+                total += FOUR * max(board | (2L << shift), depth, fourProbability);
+            }
+        }
+        return total / empty;
+    }
+
+    /**
+     * Value of the best move from a board where the player is about to move.
+     */
+    private double max(long board, int depth, double probability) {
+        if (tick()) {
+            return 0;
+        }
+        if (table != null) {
+            long entry = table.probe(board);
+            if (entry != TranspositionTable.MISS && TranspositionTable.depth(entry) >= depth) {
+                return TranspositionTable.value(entry);
+            }
+        }
+        double best = 0;
+        Direction bestMove = null;
+        for (int d = 0; d < 4; d++) {
+            Direction direction = Direction.of(d);
+            long next = BitBoard.move(board, direction);
+            if (next != board) {
+                double value = chance(next, depth - 1, probability);
+                if (bestMove == null || value > best) {
+                    best = value;
+                    bestMove = direction;
+                }
+            }
+        }
+        // A value from an aborted search is wrong, so it must not outlive the search
+        if (table != null && !aborted) {
+            table.store(board, best, depth, bestMove);
+        }
+        return best;
+    }
+
+    /**
+     * Counts a node and checks the clock and the interrupt flag now and then.
+     * @return true if the time budget ran out or the thread was interrupted, and the search
+     *         should unwind
+     */
+    private boolean tick() {
+        nodes++;
+        if ((nodes & (CLOCK_INTERVAL - 1)) == 0 && (System.nanoTime() > deadline
+                || Thread.currentThread().isInterrupted())) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    /**
+     * Static evaluation of a board with Evaluator.DEFAULT.
+     * @param board packed board
+     * @return heuristic value, higher is better
+     */
+    public static double evaluate(long board) {
+        return Evaluator.DEFAULT.evaluate(board);
+    }
+}
@@ -0,0 +1,142 @@
+package org.cis120.twentyfortyeight.ai;
+
+/**
+ * Terms an Evaluator can weigh. Each one scores a single line of four cells, given as exponents
+ * from the leftmost or topmost cell on, so it can be computed once for every possible row and
+ * looked up for all rows and columns of a board. Terms that penalize a board score negative.
+ */
+public enum Heuristic {
+
+    /**
+     * How far the line is from being sorted in either direction, as the smaller sum of rises of
+     * exponent^4 going one way or the other, negated.
+     */
+    MONOTONICITY {
+        @Override
+        float score(int[] line) {
+            float left = 0;
+            float right = 0;
+            for (int j = 1; j < line.length; j++) {
+                float a = (float) Math.pow(line[j - 1], 4);
+                float b = (float) Math.pow(line[j], 4);
+                if (line[j - 1] > line[j]) {
+                    left += a - b;
+                } else {
+                    right += b - a;
+                }
+            }
+            return -Math.min(left, right);
+        }
+    },
+
+    /**
+     * Differences in exponent between tiles that would meet if the line were shifted, negated.
+     */
+    SMOOTHNESS {
+        @Override
+        float score(int[] line) {
+            float total = 0;
+            int prev = 0;
+            for (int exponent : line) {
+                if (exponent != 0) {
+                    if (prev != 0) {
+                        total += Math.abs(exponent - prev);
+                    }
+                    prev = exponent;
+                }
+            }
+            return -total;
+        }
+    },
+
+    /**
+     * Number of empty cells.
+     */
+    EMPTY {
+        @Override
+        float score(int[] line) {
+            int empty = 0;
+            for (int exponent : line) {
+                if (exponent == 0) {
+                    empty++;
+                }
+            }
+            return empty;
+        }
+    },
+
+    /**
+     * Tiles that could merge: every run of equal tiles, ignoring gaps, counts its length.
+     */
+    MERGES {
+        @Override
+        float score(int[] line) {
+            int merges = 0;
+            int prev = 0;
+            int counter = 0;
+            for (int exponent : line) {
+                if (exponent == 0) {
+                    continue;
+                }
+                if (prev == exponent) {
+                    counter++;
+                } else if (counter > 0) {
+                    merges += 1 + counter;
+                    counter = 0;
+                }
+                prev = exponent;
+            }
+            return counter > 0 ? merges + 1 + counter : merges;
+        }
+    },
+
+    /**
+     * Sum of exponent^3.5 over the tiles, negated, so that boards holding the same points in
+     * fewer, bigger tiles score better.
+     */
+    TILE_SUM {
+        @Override
+        float score(int[] line) {
+            float sum = 0;
+            for (int exponent : line) {
+                sum += (float) Math.pow(exponent, 3.5);
+            }
+            return -sum;
+        }
+    },
+
+    /**
+     * Exponent of the largest tile of an edge row or column if it sits at one of its ends. Only
+     * counted on the outer lines, so the largest tile of the board scores twice when it is in a
+     * corner.
+     */
+    CORNER {
+        @Override
+        float score(int[] line) {
+            int max = 0;
+            for (int exponent : line) {
+                max = Math.max(max, exponent);
+            }
+            return line[0] == max || line[line.length - 1] == max ? max : 0;
+        }
+
+        @Override
+        boolean edgeOnly() {
+            return true;
+        }
+    };
+
+    /**
+     * Scores one line.
+     * @param line exponents of the four cells, 0 for an empty cell
+     * @return unweighted score of the line
+     */
+    abstract float score(int[] line);
+
+    /**
+     * Whether the term only applies to the top and bottom rows and the outer columns.
+     */
+    boolean edgeOnly() {
+        return false;
+    }
+}
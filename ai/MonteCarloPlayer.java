@@ -0,0 +1,167 @@
+package org.cis120.twentyfortyeight.ai;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.Direction;
+import org.cis120.twentyfortyeight.TwentyFortyEight;
+
+/**
+ * Pure Monte Carlo strategy: for every direction that changes the board, play a number of
+ * random games to the end and pick the direction whose games scored best on average.
+ *
+ * Playouts are split into chunks that run as fork/join tasks. Every chunk works on its own
+ * packed boards with its own SplittableRandom, seeded from the player's seed, the position, the
+ * direction and the chunk's first playout. Nothing is shared between workers, and the same seed
+ * gives the same decision no matter how many threads run it.
+ */
+public class MonteCarloPlayer {
+
+    public static final int DEFAULT_ROLLOUTS = 1000;
+
+    // Playouts a single task runs before it stops splitting
+    private static final int CHUNK = 32;
+
+    private final int rolloutsPerMove;
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a player that runs DEFAULT_ROLLOUTS playouts per direction on the common pool.
+     * @param seed seed for all playouts
+     */
+    public MonteCarloPlayer(long seed) {
+        this(DEFAULT_ROLLOUTS, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a player.
+     * @param rolloutsPerMove playouts per direction, at least 1
+     * @param seed seed for all playouts
+     * @param pool pool the playouts run on
+     */
+    public MonteCarloPlayer(int rolloutsPerMove, long seed, ForkJoinPool pool) {
+        if (rolloutsPerMove < 1) {
+            throw new IllegalArgumentException("Need at least one rollout per move");
+        }
+        this.rolloutsPerMove = rolloutsPerMove;
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    /**
+     * Picks the move whose random playouts score best for the current state of a game.
+     * @param state game to look at; it is not modified
+     * @return the suggested move and a report of the playouts
+     */
+    public RolloutResult bestMove(TwentyFortyEight state) {
+        return bestMove(state.getBits());
+    }
+
+    /**
+     * Picks the move whose random playouts score best for a packed board.
+     * @param board packed board, see BitBoard
+     * @return the suggested move and a report of the playouts
+     */
+    public RolloutResult bestMove(long board) {
+        long start = System.nanoTime();
+        Rollouts[] tasks = new Rollouts[4];
+        for (int d = 0; d < 4; d++) {
+            if (BitBoard.canMove(board, Direction.of(d))) {
+                tasks[d] = new Rollouts(board, d, mix(seed, board + d), 0, rolloutsPerMove);
+                pool.execute(tasks[d]);
+            }
+        }
+        Direction best = null;
+        double bestMean = Double.NEGATIVE_INFINITY;
+        double[] means = new double[4];
+        long rollouts = 0;
+        for (int d = 0; d < 4; d++) {
+            if (tasks[d] == null) {
+                means[d] = Double.NaN;
+                continue;
+            }
+            means[d] = (double) tasks[d].join() / rolloutsPerMove;
+            rollouts += rolloutsPerMove;
+            if (means[d] > bestMean) {
+                bestMean = means[d];
+                best = Direction.of(d);
+            }
+        }
+        return new RolloutResult(best, means, rollouts, System.nanoTime() - start);
+    }
+
+    /**
+     * Plays random moves from a board until the game is over.
+     * @param board packed board, right after a spawn
+     * @param rng generator owned by the calling worker
+     * @return points scored along the way
+     */
+    static long playout(long board, SplittableRandom rng) {
+        long score = 0;
+        while (true) {
+            // Only the chosen move is made; the others are ruled in or out by the row tables
+            int legal = BitBoard.legalMoves(board);
+            if (legal == 0) {
+                return score;
+            }
+            Direction pick = BitBoard.selectMove(legal, rng.nextInt(Integer.bitCount(legal)));
+            score += BitBoard.score(board, pick);
+            board = BitBoard.spawn(BitBoard.move(board, pick), rng);
+        }
+    }
+
+    /**
+     * Stafford's variant 13 of the splitmix64 finalizer, used to derive independent seeds.
+     */
+    private static long mix(long a, long b) {
+        long z = a + b * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Runs playouts [from, to) for one first move, splitting in half until the range is small.
+     * Returns the total score of its playouts.
+     */
+    private static class Rollouts extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final long board;
+        private final int direction;
+        private final long seed;
+        private final int from;
+        private final int to;
+
+        Rollouts(long board, int direction, long seed, int from, int to) {
+            this.board = board;
+            this.direction = direction;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                Rollouts left = new Rollouts(board, direction, seed, from, mid);
+                left.fork();
+                long right = new Rollouts(board, direction, seed, mid, to).compute();
+                return right + left.join();
+            }
+            SplittableRandom rng = new SplittableRandom(mix(seed, from));
+            Direction first = Direction.of(direction);
+            long moved = BitBoard.move(board, first);
+            long firstScore = BitBoard.score(board, first);
+            long total = 0;
+            for (int i = from; i < to; i++) {
+                total += firstScore + playout(BitBoard.spawn(moved, rng), rng);
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.cis120.twentyfortyeight.ai;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.Direction;
+
+/**
+ * A learned evaluation of 4x4 boards: an n-tuple network.
+ *
+ * Each tuple is a fixed group of cells. The exponents in those cells, read as a number in base
+ * 16, index a table of weights, and the value of a board is the sum of the weights its tuples
+ * pick out, looked up on all 8 rotations and reflections of the board. The weights are learned
+ * by TDTrainer.
+ *
+ * The weights live in a memory-mapped file rather than on the heap, so opening a network takes
+ * no longer than mapping the file, and pages are read in as they are used. Training threads
+ * update weights in place with a compare-and-set per weight, so any number of them can learn
+ * into one network without locks and without losing updates.
+ *
+ * File, all little-endian: magic, version, tuple count, unused (ints), games trained (long),
+ * then per tuple its length (int) and cells (8 bytes, 4 * row + col), padded to HEADER_SIZE
+ * bytes. Then the weights of every tuple, 16^length floats each.
+ */
+public class NTupleNetwork implements Closeable {
+
+    public static final int MAGIC = 0x4E545550; // "NTUP"
+    public static final int VERSION = 1;
+    public static final String DEFAULT_FILE = "files/ntuple.dat";
+    public static final int MAX_TUPLES = 16;
+    public static final int MAX_TUPLE_LENGTH = 6;
+
+    // Rows and squares with 4 cells each, about 1 MB of weights
+    public static final int[][] SMALL_TUPLES = {
+        {0, 1, 2, 3}, {4, 5, 6, 7}, {0, 1, 4, 5}, {1, 2, 5, 6}, {5, 6, 9, 10}
+    };
+    // Four 6-cell tuples, 256 MB of weights that need far more games to learn but play better
+    public static final int[][] LARGE_TUPLES = {
+        {0, 1, 2, 3, 4, 5}, {4, 5, 6, 7, 8, 9}, {0, 1, 2, 4, 5, 6}, {4, 5, 6, 8, 9, 10}
+    };
+
+    private static final int HEADER_SIZE = 256;
+    private static final int GAMES_OFFSET = 16;
+    private static final int TUPLES_OFFSET = 24;
+    private static final int SYMMETRIES = 8;
+    private static final VarHandle WEIGHT =
+            MethodHandles.byteBufferViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final ByteBuffer weights;
+    private final boolean writable;
+    // Shift of each cell of each tuple, and byte offset of each tuple's weights
+    private final int[][] shifts;
+    private final int[] tableOffsets;
+
+    private NTupleNetwork(FileChannel channel, int[][] tuples, boolean writable)
+            throws IOException {
+        this.channel = channel;
+        this.writable = writable;
+        shifts = new int[tuples.length][];
+        tableOffsets = new int[tuples.length];
+        long size = HEADER_SIZE;
+        for (int t = 0; t < tuples.length; t++) {
+            shifts[t] = new int[tuples[t].length];
+            for (int i = 0; i < tuples[t].length; i++) {
+                shifts[t][i] = tuples[t][i] << 2;
+            }
+            tableOffsets[t] = (int) size;
+            size += 4L << (tuples[t].length << 2);
+        }
+        MappedByteBuffer map = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+                : FileChannel.MapMode.READ_ONLY, 0, size);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        weights = map;
+    }
+
+    /**
+     * Opens a network to play with. The weights are mapped read-only.
+     * @param path file written by TDTrainer
+     * @return the network
+     * @throws IOException if the file cannot be read or is not a network of this version
+     */
+    public static NTupleNetwork open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new NTupleNetwork(channel, readTuples(channel, path), false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a network to train, creating it with every weight 0 if the file does not exist.
+     * @param path location of the file
+     * @param tuples cells of each tuple for a new file; an existing file keeps its own
+     * @return the network
+     * @throws IOException if the file cannot be opened or is not a network of this version
+     */
+    public static NTupleNetwork openForTraining(Path path, int[][] tuples) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > 0) {
+                return new NTupleNetwork(channel, readTuples(channel, path), true);
+            }
+            checkTuples(tuples);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(tuples.length).putInt(0).putLong(0);
+            for (int[] tuple : tuples) {
+                header.putInt(tuple.length);
+                for (int i = 0; i < 8; i++) {
+                    header.put((byte) (i < tuple.length ? tuple[i] : 0));
+                }
+            }
+            header.clear();
+            channel.write(header, 0);
+            // Mapping past the end grows the file with zeros, which is every weight at 0
+            return new NTupleNetwork(channel, tuples, true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static int[][] readTuples(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Not an n-tuple network: " + path);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported n-tuple network version " + version);
+        }
+        int count = header.getInt();
+        if (count < 1 || count > MAX_TUPLES) {
+            throw new IOException("Bad tuple count " + count + " in " + path);
+        }
+        header.position(TUPLES_OFFSET);
+        int[][] tuples = new int[count][];
+        for (int t = 0; t < count; t++) {
+            int length = header.getInt();
+            if (length < 1 || length > MAX_TUPLE_LENGTH) {
+                throw new IOException("Bad tuple length " + length + " in " + path);
+            }
+            tuples[t] = new int[length];
+            for (int i = 0; i < 8; i++) {
+                byte cell = header.get();
+                if (i < length) {
+                    tuples[t][i] = cell;
+                }
+            }
+        }
+        try {
+            checkTuples(tuples);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage() + " in " + path);
+        }
+        return tuples;
+    }
+
+    private static void checkTuples(int[][] tuples) {
+        if (tuples.length < 1 || tuples.length > MAX_TUPLES) {
+            throw new IllegalArgumentException("Need 1 to " + MAX_TUPLES + " tuples");
+        }
+        for (int[] tuple : tuples) {
+            if (tuple.length < 1 || tuple.length > MAX_TUPLE_LENGTH) {
+                throw new IllegalArgumentException("Tuples must have 1 to " + MAX_TUPLE_LENGTH
+                        + " cells");
+            }
+            for (int cell : tuple) {
+                if (cell < 0 || cell >= BitBoard.SIZE * BitBoard.SIZE) {
+                    throw new IllegalArgumentException("No cell " + cell);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the cells of one tuple as a number in base 16, first cell lowest.
+     */
+    private static int index(long board, int[] cells) {
+        int index = 0;
+        for (int i = 0; i < cells.length; i++) {
+            index |= (int) (board >>> cells[i] & 0xF) << (i << 2);
+        }
+        return index;
+    }
+
+    /**
+     * Getter for the number of weights that make up the value of a board
+     * @return tuples times symmetries
+     */
+    public int featureCount() {
+        return shifts.length * SYMMETRIES;
+    }
+
+    /**
+     * Value of a board: the points the network expects to score from it until the game ends.
+     * @param board packed board
+     * @return sum of the board's weights
+     */
+    public double evaluate(long board) {
+        double value = 0;
+        for (int s = 0; s < SYMMETRIES; s++) {
+            long copy = TranspositionTable.transform(board, s);
+            for (int t = 0; t < shifts.length; t++) {
+                value += weights.getFloat(tableOffsets[t] + (index(copy, shifts[t]) << 2));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Moves the value of a board by delta, spread evenly over its weights. Safe to call from many
+     * threads at once.
+     * @param board packed board
+     * @param delta change of the board's value
+     * @throws ReadOnlyBufferException if the network was not opened for training
+     */
+    public void update(long board, double delta) {
+        if (!writable) {
+            throw new ReadOnlyBufferException();
+        }
+        float step = (float) (delta / featureCount());
+        for (int s = 0; s < SYMMETRIES; s++) {
+            long copy = TranspositionTable.transform(board, s);
+            for (int t = 0; t < shifts.length; t++) {
+                int offset = tableOffsets[t] + (index(copy, shifts[t]) << 2);
+                float old;
+                do {
+                    old = (float) WEIGHT.getVolatile(weights, offset);
+                } while (!WEIGHT.compareAndSet(weights, offset, old, old + step));
+            }
+        }
+    }
+
+    /**
+     * Picks the move whose points plus the value of the board it leaves are the highest.
+     * @param board packed board
+     * @return the best direction, or null if no move changes the board
+     */
+    public Direction bestMove(long board) {
+        Direction best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int d = 0; d < 4; d++) {
+            Direction direction = Direction.of(d);
+            long next = BitBoard.move(board, direction);
+            if (next == board) {
+                continue;
+            }
+            double value = BitBoard.score(board, direction) + evaluate(next);
+            if (value > bestValue) {
+                bestValue = value;
+                best = direction;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Getter for the number of games the network was trained on
+     * @return games recorded with addGames()
+     */
+    public long getGames() {
+        return weights.getLong(GAMES_OFFSET);
+    }
+
+    /**
+     * Adds to the number of games the network was trained on. Only the training thread that
+     * reports progress should call this.
+     * @param games games just trained on
+     */
+    public void addGames(long games) {
+        weights.putLong(GAMES_OFFSET, getGames() + games);
+    }
+
+    /**
+     * Forces the weights to the disk, if the network was opened for training.
+     */
+    public void flush() {
+        if (writable) {
+            ((MappedByteBuffer) weights).force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,68 @@
+package org.cis120.twentyfortyeight.ai;
+
+import org.cis120.twentyfortyeight.Direction;
+
+/**
+ * What a Monte Carlo decision picked, the mean rollout score of every direction, and how fast
+ * the rollouts ran.
+ */
+public class RolloutResult {
+    private final Direction move;
+    private final double[] meanScores;
+    private final long rollouts;
+    private final long elapsedNanos;
+
+    public RolloutResult(Direction move, double[] meanScores, long rollouts, long elapsedNanos) {
+        this.move = move;
+        this.meanScores = meanScores.clone();
+        this.rollouts = rollouts;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Getter for the suggested move
+     * @return direction with the best mean score, or null if no move changes the board
+     */
+    public Direction getMove() {
+        return move;
+    }
+
+    /**
+     * Mean score gained by the playouts that started with a direction
+     * @param direction first move of the playouts
+     * @return mean score, or NaN if the direction does not change the board
+     */
+    public double getMeanScore(Direction direction) {
+        return meanScores[direction.ordinal()];
+    }
+
+    /**
+     * Getter for the number of playouts run over all directions
+     * @return rollouts
+     */
+    public long getRollouts() {
+        return rollouts;
+    }
+
+    /**
+     * Getter for the wall-clock time of the decision
+     * @return elapsedNanos
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Playout speed over the whole decision
+     * @return rollouts per second
+     */
+    public double getRolloutsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rollouts * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d rollouts in %.3f ms, %.0f rollouts/s)",
+                move, rollouts, elapsedNanos / 1e6, getRolloutsPerSecond());
+    }
+}
@@ -0,0 +1,76 @@
+package org.cis120.twentyfortyeight.ai;
+
+import org.cis120.twentyfortyeight.Direction;
+
+/**
+ * What a single search decided, together with a report of how much work it took.
+ */
+public class SearchResult {
+    private final Direction move;
+    private final double value;
+    private final int depth;
+    private final long nodes;
+    private final long elapsedNanos;
+
+    public SearchResult(Direction move, double value, int depth, long nodes, long elapsedNanos) {
+        this.move = move;
+        this.value = value;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Getter for the suggested move
+     * @return best direction found, or null if no move changes the board
+     */
+    public Direction getMove() {
+        return move;
+    }
+
+    /**
+     * Getter for the expected evaluation of the suggested move
+     * @return value
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Getter for the deepest search that finished within the time budget
+     * @return depth in moves
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Getter for the number of positions visited, including unfinished iterations
+     * @return nodes
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Getter for the wall-clock time the search took
+     * @return elapsedNanos
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Search speed over the whole search
+     * @return nodes visited per second
+     */
+    public double getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (value %.1f, depth %d, %d nodes in %.3f ms)",
+                move, value, depth, nodes, elapsedNanos / 1e6);
+    }
+}
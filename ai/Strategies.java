@@ -0,0 +1,221 @@
+package org.cis120.twentyfortyeight.ai;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.Direction;
+
+/**
+ * Built-in strategies, and a way of looking them up by name from the command line.
+ */
+public final class Strategies {
+
+    // Order the corner strategy tries directions in, keeping big tiles in the top left corner
+    private static final Direction[] CORNER_ORDER = {
+        Direction.UP, Direction.LEFT, Direction.RIGHT, Direction.DOWN
+    };
+
+    private Strategies() {
+    }
+
+    /**
+     * Moves in a uniformly random direction out of those that change the board.
+     */
+    public static Strategy random() {
+        return (board, rng) -> {
+            int legal = BitBoard.legalMoves(board);
+            if (legal == 0) {
+                return null;
+            }
+            return BitBoard.selectMove(legal, rng.nextInt(Integer.bitCount(legal)));
+        };
+    }
+
+    /**
+     * Takes the move that scores the most right away, breaking ties by the number of empty
+     * cells it leaves.
+     */
+    public static Strategy greedy() {
+        return (board, rng) -> {
+            Direction best = null;
+            long bestKey = -1;
+            for (int d = 0; d < 4; d++) {
+                Direction direction = Direction.of(d);
+                long next = BitBoard.move(board, direction);
+                if (next == board) {
+                    continue;
+                }
+                long key = (long) BitBoard.score(board, direction) << 5
+                        | BitBoard.emptyCount(next);
+                if (key > bestKey) {
+                    bestKey = key;
+                    best = direction;
+                }
+            }
+            return best;
+        };
+    }
+
+    /**
+     * Moves up whenever it can, then left, then right, and down only as a last resort.
+     */
+    public static Strategy corner() {
+        return (board, rng) -> {
+            for (Direction direction : CORNER_ORDER) {
+                if (BitBoard.canMove(board, direction)) {
+                    return direction;
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Takes the move whose points plus the rating of the board it leaves are the highest. The
+     * boards left by all four moves are rated in one batch.
+     * @param evaluator rates boards
+     */
+    public static Strategy heuristic(Evaluator evaluator) {
+        long[] next = new long[4];
+        float[] values = new float[4];
+        return (board, rng) -> {
+            for (int d = 0; d < 4; d++) {
+                next[d] = BitBoard.move(board, Direction.of(d));
+            }
+            evaluator.evaluate(next, 4, values);
+            Direction best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int d = 0; d < 4; d++) {
+                Direction direction = Direction.of(d);
+                double value = BitBoard.score(board, direction) + values[d];
+                if (next[d] != board && value > bestValue) {
+                    bestValue = value;
+                    best = direction;
+                }
+            }
+            return best;
+        };
+    }
+
+    /**
+     * Runs an expectimax search for every move.
+     * @param timeBudgetMillis time budget of each search
+     */
+    public static Strategy expectimax(long timeBudgetMillis) {
+        return expectimax(timeBudgetMillis, null);
+    }
+
+    /**
+     * Runs an expectimax search for every move, caching results in a table that other
+     * strategies may share. The strategy never starts a new generation of the table; that is up
+     * to whoever owns the table.
+     * @param timeBudgetMillis time budget of each search
+     * @param table cache of searched boards, or null
+     */
+    public static Strategy expectimax(long timeBudgetMillis, TranspositionTable table) {
+        Expectimax search = new Expectimax(Expectimax.DEFAULT_MAX_DEPTH, table);
+        return (board, rng) -> search.bestMove(board, timeBudgetMillis).getMove();
+    }
+
+    /**
+     * Makes expectimax strategies that all share one table, which the factory owns. Every
+     * strategy it made counts the games it starts, and the table starts a new generation once per
+     * round of as many games as there are strategies, that is about once per game on every
+     * thread of a batch run.
+     * @param timeBudgetMillis time budget of each search
+     * @param table cache of searched boards shared by every strategy made
+     */
+    private static Supplier<Strategy> sharedExpectimax(long timeBudgetMillis,
+                                                       TranspositionTable table) {
+        AtomicInteger players = new AtomicInteger();
+        AtomicLong games = new AtomicLong();
+        return () -> {
+            players.incrementAndGet();
+            Strategy search = expectimax(timeBudgetMillis, table);
+            return new Strategy() {
+                @Override
+                public Direction chooseMove(long board, SplittableRandom rng) {
+                    return search.chooseMove(board, rng);
+                }
+
+                @Override
+                public void newGame() {
+                    if (games.incrementAndGet() % players.get() == 0) {
+                        table.newGeneration();
+                    }
+                }
+            };
+        };
+    }
+
+    /**
+     * Runs Monte Carlo playouts for every move on the common fork/join pool, seeded from the
+     * calling thread's generator.
+     * @param rolloutsPerMove playouts per direction
+     */
+    public static Strategy monteCarlo(int rolloutsPerMove) {
+        return (board, rng) -> new MonteCarloPlayer(rolloutsPerMove, rng.nextLong(),
+                ForkJoinPool.commonPool()).bestMove(board).getMove();
+    }
+
+    /**
+     * Takes the move that a trained n-tuple network rates best, without searching.
+     * @param network network to ask, may be shared by any number of strategies
+     */
+    public static Strategy nTuple(NTupleNetwork network) {
+        return (board, rng) -> network.bestMove(board);
+    }
+
+    /**
+     * Looks up a strategy by name. Searching strategies take an optional parameter after a
+     * colon: "expectimax:5" searches for 5 ms a move, "montecarlo:200" runs 200 playouts per
+     * direction, "heuristic:empty=270,merges=700" rates the boards after each move with
+     * Evaluator.parse(), "ntuple:weights.dat" plays with the network trained into weights.dat. The
+     * expectimax strategies made by one factory share one TranspositionTable, and the n-tuple
+     * strategies share one mapping of the weights.
+     * @param spec random, greedy, corner, heuristic[:weights], expectimax[:ms],
+     *             montecarlo[:rollouts] or ntuple[:file]
+     * @return a factory making one fresh strategy per caller
+     * @throws UncheckedIOException if the weights of an n-tuple network cannot be opened
+     */
+    public static Supplier<Strategy> byName(String spec) {
+        String[] parts = spec.split(":", 2);
+        String name = parts[0].toLowerCase();
+        switch (name) {
+            case "random": return Strategies::random;
+            case "greedy": return Strategies::greedy;
+            case "corner": return Strategies::corner;
+            case "heuristic": {
+                Evaluator evaluator = parts.length > 1 ? Evaluator.parse(parts[1])
+                        : Evaluator.DEFAULT;
+                return () -> heuristic(evaluator);
+            }
+            case "expectimax": {
+                long budget = parts.length > 1 ? Long.parseLong(parts[1]) : 1;
+                return sharedExpectimax(budget, new TranspositionTable());
+            }
+            case "montecarlo": {
+                int rollouts = parts.length > 1 ? Integer.parseInt(parts[1]) : 100;
+                return () -> monteCarlo(rollouts);
+            }
+            case "ntuple": {
+                String file = parts.length > 1 ? parts[1] : NTupleNetwork.DEFAULT_FILE;
+                NTupleNetwork network;
+                try {
+                    network = NTupleNetwork.open(Paths.get(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return () -> nTuple(network);
+            }
+            default: throw new IllegalArgumentException("Unknown strategy: " + spec);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.cis120.twentyfortyeight.ai;
+
+import java.util.SplittableRandom;
+
+import org.cis120.twentyfortyeight.Direction;
+
+/**
+ * Something that picks the next move of a game. Strategies may keep state between calls, so a
+ * batch run creates one instance per thread.
+ */
+public interface Strategy {
+
+    /**
+     * Picks a move for a packed board.
+     * @param board packed board, see BitBoard
+     * @param rng generator owned by the calling thread, for strategies that need randomness
+     * @return a direction that changes the board, or null if there is none
+     */
+    Direction chooseMove(long board, SplittableRandom rng);
+
+    /**
+     * Called before the first move of every game. Does nothing unless a strategy keeps state
+     * that belongs to one game.
+     */
+    default void newGame() {
+    }
+}
@@ -0,0 +1,239 @@
+package org.cis120.twentyfortyeight.ai;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.Direction;
+
+/**
+ * Trains an NTupleNetwork by self-play with temporal-difference learning.
+ *
+ * Every thread plays whole games on packed boards, always taking the move that the network
+ * currently rates best (NTupleNetwork.bestMove()). After each move, the value of the board the
+ * previous move left is pulled toward the points of this move plus the value of the board this
+ * move leaves, which is TD(0) on afterstates. The board a game ends on is pulled toward 0. All
+ * threads learn into the same network at once; see NTupleNetwork.update().
+ *
+ * Game number i is seeded from the run seed and i like in BatchRunner, but since the threads
+ * share the weights they learn from, a run is only repeatable on one thread.
+ *
+ * Usage: TDTrainer [--weights FILE] [--games N] [--threads T] [--alpha A] [--seed S]
+ * [--tuples small|large] [--report SECONDS]. Training continues from the weights in FILE if it
+ * exists; --tuples only applies to a new file.
+ */
+public class TDTrainer {
+
+    public static final double DEFAULT_ALPHA = 0.1;
+
+    private final NTupleNetwork network;
+    private final int threads;
+    private final double alpha;
+    private final long seed;
+
+    private final AtomicLong nextGame = new AtomicLong();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder points = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+
+    // Totals at the last report, only used by the thread that calls train()
+    private long lastReportNanos;
+    private long lastUpdates;
+    private long lastPoints;
+    private long lastWins;
+
+    /**
+     * Sets up training.
+     * @param network network opened for training
+     * @param threads number of threads to play on
+     * @param alpha learning rate, the fraction of each error that is corrected
+     * @param seed seed of the whole run
+     */
+    public TDTrainer(NTupleNetwork network, int threads, double alpha, long seed) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Learning rate must be above 0 and at most 1");
+        }
+        this.network = network;
+        this.threads = threads;
+        this.alpha = alpha;
+        this.seed = seed;
+    }
+
+    /**
+     * Plays and learns from a number of games, blocking until they are done. Progress is printed
+     * every reportMillis.
+     * @param count number of games
+     * @param reportMillis time between progress reports, or 0 for none
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void train(long count, long reportMillis) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long end = nextGame.get() + count;
+        try {
+            Future<?>[] workers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = executor.submit(() -> playGames(end));
+            }
+            long reported = games.sum();
+            for (Future<?> worker : workers) {
+                while (true) {
+                    try {
+                        if (reportMillis > 0) {
+                            worker.get(reportMillis, TimeUnit.MILLISECONDS);
+                        } else {
+                            worker.get();
+                        }
+                        break;
+                    } catch (TimeoutException e) {
+                        reported = report(reported, start);
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Training failed", e.getCause());
+                    }
+                }
+            }
+            network.addGames(games.sum() - reported);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Prints the throughput and the average score since the last report.
+     * @return games played so far
+     */
+    private long report(long reported, long start) {
+        long now = System.nanoTime();
+        long since = lastReportNanos == 0 ? start : lastReportNanos;
+        double seconds = (now - since) / 1e9;
+        long played = games.sum();
+        long updated = updates.sum();
+        long scored = points.sum();
+        long won = wins.sum();
+        long interval = played - reported;
+        System.out.println(String.format("%d games, %.0f games/s, %.0f updates/s, "
+                        + "mean score %.0f, 2048 reached %.1f%%", network.getGames() + interval,
+                interval / seconds, (updated - lastUpdates) / seconds,
+                interval == 0 ? 0.0 : (double) (scored - lastPoints) / interval,
+                interval == 0 ? 0.0 : 100.0 * (won - lastWins) / interval));
+        network.addGames(interval);
+        lastReportNanos = now;
+        lastUpdates = updated;
+        lastPoints = scored;
+        lastWins = won;
+        return played;
+    }
+
+    /**
+     * Takes game numbers until end is reached and plays each one, learning as it goes.
+     */
+    private void playGames(long end) {
+        long game;
+        while ((game = nextGame.getAndIncrement()) < end) {
+            SplittableRandom rng = new SplittableRandom(seed + game * 0x9E3779B97F4A7C15L);
+            long board = BitBoard.spawn(BitBoard.spawn(0, rng), rng);
+            long previous = -1;
+            int score = 0;
+            int moves = 0;
+            while (true) {
+                Direction direction = network.bestMove(board);
+                if (direction == null) {
+                    break;
+                }
+                long next = BitBoard.move(board, direction);
+                int reward = BitBoard.score(board, direction);
+                if (previous != -1) {
+                    learn(previous, reward + network.evaluate(next));
+                }
+                previous = next;
+                score += reward;
+                moves++;
+                board = BitBoard.spawn(next, rng);
+            }
+            if (previous != -1) {
+                learn(previous, 0);
+            }
+            games.increment();
+            updates.add(moves);
+            points.add(score);
+            if (BitBoard.maxExponent(board) >= 11) {
+                wins.increment();
+            }
+        }
+    }
+
+    private void learn(long board, double target) {
+        network.update(board, alpha * (target - network.evaluate(board)));
+    }
+
+    /**
+     * Getter for the number of games played
+     * @return games finished by this trainer
+     */
+    public long getGames() {
+        return games.sum();
+    }
+
+    /**
+     * Getter for the number of weight updates
+     * @return afterstates learned from, each one update of every feature of the board
+     */
+    public long getUpdates() {
+        return updates.sum();
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        String file = NTupleNetwork.DEFAULT_FILE;
+        long games = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double alpha = DEFAULT_ALPHA;
+        long seed = 0;
+        int[][] tuples = NTupleNetwork.LARGE_TUPLES;
+        long reportSeconds = 1;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--weights": file = args[i + 1]; break;
+                case "--games": games = Long.parseLong(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--alpha": alpha = Double.parseDouble(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--report": reportSeconds = Long.parseLong(args[i + 1]); break;
+                case "--tuples":
+                    switch (args[i + 1]) {
+                        case "small": tuples = NTupleNetwork.SMALL_TUPLES; break;
+                        case "large": tuples = NTupleNetwork.LARGE_TUPLES; break;
+                        default: throw new IllegalArgumentException("Unknown tuples: "
+                                + args[i + 1]);
+                    }
+                    break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        try (NTupleNetwork network = NTupleNetwork.openForTraining(Paths.get(file), tuples)) {
+            TDTrainer trainer = new TDTrainer(network, threads, alpha, seed + network.getGames());
+            long start = System.nanoTime();
+            trainer.train(games, reportSeconds * 1000);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Trained %d games in %.1f s: %.0f games/s, "
+                            + "%.0f updates/s, %d games in %s", trainer.getGames(), seconds,
+                    trainer.getGames() / seconds, trainer.getUpdates() / seconds,
+                    network.getGames(), file));
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package org.cis120.twentyfortyeight.ai;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.Direction;
+
+/**
+ * A fixed-size cache of search results that any number of threads share without locks.
+ *
+ * The game looks the same after rotating or mirroring the board, so every board is stored under
+ * its canonical form: the smallest of its 8 rotations and reflections, compared as unsigned
+ * longs. A position found once is then a hit for all of its symmetric copies. The best move is
+ * stored in the canonical frame and turned back into the frame of the board being looked up.
+ *
+ * Each slot is two longs, the entry and the canonical key XOR-ed with the entry. A reader checks
+ * that the two still match its key, so a slot that another thread is halfway through writing
+ * reads as a miss instead of a wrong result, and no slot ever needs a lock.
+ *
+ * A store replaces the entry in its slot when the slot is empty, holds the same board, was
+ * written in an older generation (see newGeneration()), or holds a shallower search. Otherwise
+ * the deeper result is kept. Searches never start a generation themselves: whoever owns the table
+ * does, once per game, or once per round of games when many threads play on one table, so that
+ * searchers sharing it do not age each other's entries.
+ *
+ * Entry: value (float bits, 0 to 31), depth (32 to 39), best direction + 1 or 0 (40 to 42),
+ * generation (48 to 62), and bit 63 set in every stored entry so that 0 means a miss.
+ */
+public class TranspositionTable {
+
+    public static final int DEFAULT_BITS = 20;
+    public static final long MISS = 0;
+
+    private static final long VALID = 1L << 63;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int MOVE_SHIFT = 40;
+    private static final int GENERATION_SHIFT = 48;
+    private static final long DEPTH_MASK = 0xFFL;
+    private static final long GENERATION_MASK = 0x7FFFL;
+
+    // Nibbles of a board that a mirror moves by 12 and by 4 places
+    private static final long OUTER_LEFT = 0x000F000F000F000FL;
+    private static final long INNER_LEFT = 0x00F000F000F000F0L;
+    private static final long INNER_RIGHT = 0x0F000F000F000F00L;
+    private static final long OUTER_RIGHT = 0xF000F000F000F000L;
+
+    private final int mask;
+    // Slot i: entry at 2 * i, key ^ entry at 2 * i + 1
+    private final AtomicLongArray slots;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Creates a table of DEFAULT_BITS bits, 16 bytes a slot.
+     */
+    public TranspositionTable() {
+        this(DEFAULT_BITS);
+    }
+
+    /**
+     * Creates an empty table.
+     * @param bits log2 of the number of slots, from 4 to 30
+     */
+    public TranspositionTable(int bits) {
+        if (bits < 4 || bits > 30) {
+            throw new IllegalArgumentException("Bits must be from 4 to 30");
+        }
+        mask = (1 << bits) - 1;
+        slots = new AtomicLongArray(2 << bits);
+    }
+
+    /**
+     * Mirrors a board left to right.
+     * @param board packed board
+     * @return the board with every row reversed
+     */
+    public static long mirror(long board) {
+        return (board & OUTER_RIGHT) >>> 12 | (board & INNER_RIGHT) >>> 4
+                | (board & INNER_LEFT) << 4 | (board & OUTER_LEFT) << 12;
+    }
+
+    /**
+     * Flips a board upside down.
+     * @param board packed board
+     * @return the board with the order of the rows reversed
+     */
+    public static long flip(long board) {
+        return board >>> 48 | (board >>> 16) & 0xFFFF0000L | (board << 16) & 0xFFFF00000000L
+                | board << 48;
+    }
+
+    /**
+     * Applies one of the 8 symmetries of the square.
+     * @param board packed board
+     * @param symmetry bit 0 transposes, then bit 1 flips, then bit 2 mirrors
+     * @return the transformed board
+     */
+    public static long transform(long board, int symmetry) {
+        if ((symmetry & 1) != 0) {
+            board = BitBoard.transpose(board);
+        }
+        if ((symmetry & 2) != 0) {
+            board = flip(board);
+        }
+        if ((symmetry & 4) != 0) {
+            board = mirror(board);
+        }
+        return board;
+    }
+
+    /**
+     * Getter for the canonical form of a board
+     * @param board packed board
+     * @return the smallest of its 8 symmetric copies
+     */
+    public static long canonical(long board) {
+        return transform(board, canonicalSymmetry(board));
+    }
+
+    /**
+     * Finds the symmetry that turns a board into its canonical form.
+     * @param board packed board
+     * @return symmetry for transform(), the lowest one if several give the same board
+     */
+    public static int canonicalSymmetry(long board) {
+        long t = BitBoard.transpose(board);
+        long[] copies = {board, t, flip(board), flip(t)};
+        int best = 0;
+        long min = board;
+        for (int i = 0; i < 4; i++) {
+            long copy = copies[i];
+            if (Long.compareUnsigned(copy, min) < 0) {
+                min = copy;
+                best = i;
+            }
+            long mirrored = mirror(copy);
+            if (Long.compareUnsigned(mirrored, min) < 0) {
+                min = mirrored;
+                best = i | 4;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Where a direction goes when a board is transformed by a symmetry.
+     */
+    private static int mapDirection(int direction, int symmetry) {
+        // LEFT 0, RIGHT 1, UP 2, DOWN 3: a transpose swaps the axes, a flip swaps UP and DOWN,
+        // a mirror swaps LEFT and RIGHT
+        if ((symmetry & 1) != 0) {
+            direction ^= 2;
+        }
+        if ((symmetry & 2) != 0 && direction >= 2) {
+            direction ^= 1;
+        }
+        if ((symmetry & 4) != 0 && direction < 2) {
+            direction ^= 1;
+        }
+        return direction;
+    }
+
+    /**
+     * Where a direction of a transformed board came from, the inverse of mapDirection().
+     */
+    private static int unmapDirection(int direction, int symmetry) {
+        if ((symmetry & 4) != 0 && direction < 2) {
+            direction ^= 1;
+        }
+        if ((symmetry & 2) != 0 && direction >= 2) {
+            direction ^= 1;
+        }
+        if ((symmetry & 1) != 0) {
+            direction ^= 2;
+        }
+        return direction;
+    }
+
+    private int index(long key) {
+        // Stafford's variant 13 of the splitmix64 finalizer spreads boards over the slots
+        long h = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (h ^ (h >>> 31)) & mask;
+    }
+
+    /**
+     * Looks up a board or any of its symmetric copies.
+     * @param board packed board
+     * @return the entry, with its best move in the frame of this board, or MISS
+     */
+    public long probe(long board) {
+        int symmetry = canonicalSymmetry(board);
+        long key = transform(board, symmetry);
+        int slot = index(key) << 1;
+        long entry = slots.getOpaque(slot);
+        long check = slots.getOpaque(slot + 1);
+        probes.increment();
+        if (entry == MISS) {
+            return MISS;
+        }
+        if ((entry ^ check) != key) {
+            collisions.increment();
+            return MISS;
+        }
+        hits.increment();
+        int move = (int) (entry >>> MOVE_SHIFT) & 7;
+        if (move == 0) {
+            return entry;
+        }
+        long unmapped = unmapDirection(move - 1, symmetry) + 1;
+        return entry & ~(7L << MOVE_SHIFT) | unmapped << MOVE_SHIFT;
+    }
+
+    /**
+     * Stores the result of a search, unless the slot holds a deeper search of another board
+     * from the current generation.
+     * @param board packed board that was searched
+     * @param value value found
+     * @param depth depth searched, from 0 to 255
+     * @param best best move from the board, or null
+     */
+    public void store(long board, double value, int depth, Direction best) {
+        int symmetry = canonicalSymmetry(board);
+        long key = transform(board, symmetry);
+        int slot = index(key) << 1;
+        long old = slots.getOpaque(slot);
+        long current = generation.get() & GENERATION_MASK;
+        if (old != MISS && (old ^ slots.getOpaque(slot + 1)) != key
+                && ((old >>> GENERATION_SHIFT) & GENERATION_MASK) == current
+                && ((old >>> DEPTH_SHIFT) & DEPTH_MASK) > depth) {
+            return;
+        }
+        long move = best == null ? 0 : mapDirection(best.ordinal(), symmetry) + 1;
+        long entry = VALID | current << GENERATION_SHIFT | move << MOVE_SHIFT
+                | (long) Math.min(depth, 255) << DEPTH_SHIFT
+                | Integer.toUnsignedLong(Float.floatToRawIntBits((float) value));
+        slots.setOpaque(slot, entry);
+        slots.setOpaque(slot + 1, key ^ entry);
+        stores.increment();
+    }
+
+    /**
+     * Starts a new generation: entries stored before it are replaced first. Any thread may call
+     * this, but calls from every searcher sharing the table age all of their entries, so call it
+     * once per game from the owner of the table.
+     */
+    public void newGeneration() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Getter for the generation that stores are written in
+     * @return generation, from 0 to 32767
+     */
+    public int getGeneration() {
+        return (int) (generation.get() & GENERATION_MASK);
+    }
+
+    /**
+     * Empties every slot and resets the counters.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.setOpaque(i, 0);
+        }
+        probes.reset();
+        hits.reset();
+        collisions.reset();
+        stores.reset();
+    }
+
+    /**
+     * Getter for the value of an entry
+     * @param entry entry returned by probe()
+     * @return value stored
+     */
+    public static double value(long entry) {
+        return Float.intBitsToFloat((int) entry);
+    }
+
+    /**
+     * Getter for the depth of an entry
+     * @param entry entry returned by probe()
+     * @return depth the value was searched to
+     */
+    public static int depth(long entry) {
+        return (int) ((entry >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    /**
+     * Getter for the best move of an entry
+     * @param entry entry returned by probe()
+     * @return best move, or null if none was stored
+     */
+    public static Direction move(long entry) {
+        int move = (int) (entry >>> MOVE_SHIFT) & 7;
+        return move == 0 ? null : Direction.of(move - 1);
+    }
+
+    /**
+     * Getter for the number of slots
+     * @return capacity of the table
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Getter for the number of lookups
+     * @return probes so far
+     */
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    /**
+     * Getter for the number of lookups that found their board
+     * @return hits so far
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Getter for the number of lookups whose slot held another board
+     * @return collisions so far
+     */
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    /**
+     * Getter for the number of results stored
+     * @return stores so far
+     */
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * Fraction of lookups that found their board
+     * @return hit rate from 0 to 1
+     */
+    public double hitRate() {
+        long p = probes.sum();
+        return p == 0 ? 0 : (double) hits.sum() / p;
+    }
+
+    /**
+     * Fraction of lookups whose slot held another board
+     * @return collision rate from 0 to 1
+     */
+    public double collisionRate() {
+        long p = probes.sum();
+        return p == 0 ? 0 : (double) collisions.sum() / p;
+    }
+
+    /**
+     * Fraction of slots in use, found by looking at every slot.
+     * @return occupancy from 0 to 1
+     */
+    public double occupancy() {
+        long used = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (slots.getOpaque(i << 1) != MISS) {
+                used++;
+            }
+        }
+        return (double) used / capacity();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d slots, %.1f%% full, %d probes, %.1f%% hits, %.1f%% collisions",
+                capacity(), 100 * occupancy(), getProbes(), 100 * hitRate(),
+                100 * collisionRate());
+    }
+}
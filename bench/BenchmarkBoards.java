@@ -0,0 +1,71 @@
+package org.cis120.twentyfortyeight.bench;
+
+import org.cis120.twentyfortyeight.Tile;
+import org.cis120.twentyfortyeight.TwentyFortyEight;
+
+/**
+ * Fixed boards taken from real games at different stages, shared by all benchmarks so results
+ * are comparable between runs.
+ */
+public final class BenchmarkBoards {
+
+    private static final int[][] EARLY = {
+        {2, 0, 0, 0},
+        {4, 2, 0, 0},
+        {0, 0, 2, 0},
+        {0, 0, 0, 0}
+    };
+
+    private static final int[][] MID = {
+        {128, 64, 16, 4},
+        {32, 16, 8, 2},
+        {8, 4, 0, 0},
+        {2, 0, 0, 0}
+    };
+
+    private static final int[][] LATE = {
+        {2048, 1024, 256, 64},
+        {512, 128, 64, 16},
+        {32, 16, 8, 4},
+        {8, 4, 2, 2}
+    };
+
+    private BenchmarkBoards() {
+    }
+
+    /**
+     * Getter for the values of a named board
+     * @param stage "early", "mid" or "late"
+     * @return a fresh copy of the board
+     */
+    public static int[][] values(String stage) {
+        int[][] source;
+        switch (stage) {
+            case "early": source = EARLY; break;
+            case "mid": source = MID; break;
+            case "late": source = LATE; break;
+            default: throw new IllegalArgumentException("Unknown stage: " + stage);
+        }
+        int[][] copy = new int[source.length][];
+        for (int i = 0; i < source.length; i++) {
+            copy[i] = source[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Creates a game positioned on a named board
+     * @param stage "early", "mid" or "late"
+     * @return a new game
+     */
+    public static TwentyFortyEight game(String stage) {
+        int[][] values = values(stage);
+        Tile[][] tiles = new Tile[values.length][values.length];
+        for (int i = 0; i < values.length; i++) {
+            for (int j = 0; j < values[i].length; j++) {
+                tiles[i][j] = new Tile(values[i][j]);
+            }
+        }
+        return new TwentyFortyEight(tiles);
+    }
+}
@@ -0,0 +1,82 @@
+package org.cis120.twentyfortyeight.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.BoardBatch;
+import org.cis120.twentyfortyeight.Direction;
+import org.cis120.twentyfortyeight.TileSpawner;
+import org.cis120.twentyfortyeight.TwentyFortyEight;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Playing many random games to the end: all at once in a BoardBatch, one packed board at a time,
+ * and one TwentyFortyEight at a time.
+ *
+ * Every invocation plays the same games number of complete games, so scores are per set of games.
+ * Each benchmark returns the number of moves it made, which is about the same for all three.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BoardBatchBenchmark {
+
+    @Param({"256", "4096"})
+    public int games;
+
+    private BoardBatch batch;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        batch = new BoardBatch(games);
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        batch.clear();
+        for (int i = 0; i < games; i++) {
+            batch.addNew(seed++);
+        }
+    }
+
+    @Benchmark
+    public long batch() {
+        return batch.playRandom();
+    }
+
+    @Benchmark
+    public long packed() {
+        SplittableRandom rng = new SplittableRandom(seed++);
+        long moves = 0;
+        for (int i = 0; i < games; i++) {
+            long board = BitBoard.spawn(BitBoard.spawn(0, rng), rng);
+            int legal;
+            while ((legal = BitBoard.legalMoves(board)) != 0) {
+                Direction pick = BitBoard.selectMove(legal, rng.nextInt(Integer.bitCount(legal)));
+                board = BitBoard.spawn(BitBoard.move(board, pick), rng);
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    @Benchmark
+    public long objects() {
+        SplittableRandom rng = new SplittableRandom(seed++);
+        long moves = 0;
+        for (int i = 0; i < games; i++) {
+            TwentyFortyEight game = new TwentyFortyEight(BitBoard.SIZE, new TileSpawner(seed + i));
+            while (!game.isGameOver()) {
+                int legal = BitBoard.legalMoves(game.getBits());
+                game.move(BitBoard.selectMove(legal, rng.nextInt(Integer.bitCount(legal))));
+                moves++;
+            }
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,72 @@
+package org.cis120.twentyfortyeight.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.ai.Evaluator;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of rating BATCH boards with an Evaluator, one board at a time and in one batch, with the
+ * batch going through the scalar loop and through VectorScorer.
+ *
+ * The boards come from random games, so their rows hit the tables at realistic spots. Scores are
+ * per batch; divide by BATCH for the cost of one board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class EvaluatorBenchmark {
+
+    public static final int BATCH = 4096;
+
+    @Param({"false", "true"})
+    public boolean vector;
+
+    private Evaluator evaluator;
+    private final long[] boards = new long[BATCH];
+    private final float[] values = new float[BATCH];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty(Evaluator.VECTOR_PROPERTY, Boolean.toString(vector));
+        evaluator = Evaluator.parse("monotonicity=47,smoothness=10,empty=270,merges=700,"
+                + "tile_sum=11,corner=100,bias=200000");
+        SplittableRandom rng = new SplittableRandom(1);
+        long board = 0;
+        for (int i = 0; i < BATCH; i++) {
+            if (BitBoard.isGameOver(board)) {
+                board = 0;
+            }
+            board = BitBoard.spawn(board, rng);
+            int legal = BitBoard.legalMoves(board);
+            if (legal != 0) {
+                board = BitBoard.move(board,
+                        BitBoard.selectMove(legal, rng.nextInt(Integer.bitCount(legal))));
+            }
+            boards[i] = board;
+        }
+        if (Evaluator.isVectorized() != vector) {
+            throw new IllegalStateException("Vector scorer " + (vector ? "missing" : "in use"));
+        }
+    }
+
+    @Benchmark
+    public double single() {
+        double total = 0;
+        for (long board : boards) {
+            total += evaluator.evaluate(board);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public float[] batch() {
+        evaluator.evaluate(boards, BATCH, values);
+        return values;
+    }
+}
@@ -0,0 +1,173 @@
+package org.cis120.twentyfortyeight.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.TwentyFortyEight;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the public TwentyFortyEight API and the BitBoard kernel under it, on early-,
+ * mid- and late-game boards.
+ *
+ * Methods that change the game work through a batch of BATCH games, one call each, set up fresh
+ * before every invocation, so they never run on a board that drifted away from the one being
+ * measured. An invocation is then long enough for the setup and timing around it not to count,
+ * and scores are per call. Read-only methods share one game per trial and have no setup per
+ * invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class GameModelBenchmark {
+
+    public static final int BATCH = 4096;
+
+    @Param({"early", "mid", "late"})
+    public String stage;
+
+    private TwentyFortyEight readOnly;
+    private long bits;
+    private String file;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        readOnly = BenchmarkBoards.game(stage);
+        bits = readOnly.getBits();
+        File tmp = File.createTempFile("tfe-bench", ".sav");
+        tmp.deleteOnExit();
+        file = tmp.getPath();
+    }
+
+    /**
+     * Games on the board being measured, only set up for the benchmarks that take them, so the
+     * read-only ones run without any setup per invocation.
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+        private final TwentyFortyEight[] games = new TwentyFortyEight[BATCH];
+
+        @Setup(Level.Invocation)
+        public void setUp(GameModelBenchmark benchmark) {
+            for (int i = 0; i < BATCH; i++) {
+                games[i] = BenchmarkBoards.game(benchmark.stage);
+            }
+        }
+    }
+
+    /**
+     * Games that made one move, so there is something to undo.
+     */
+    @State(Scope.Thread)
+    public static class Moved {
+        private final TwentyFortyEight[] games = new TwentyFortyEight[BATCH];
+
+        @Setup(Level.Invocation)
+        public void setUp(GameModelBenchmark benchmark) {
+            for (int i = 0; i < BATCH; i++) {
+                games[i] = BenchmarkBoards.game(benchmark.stage);
+                games[i].moveRight();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void moveLeft(Fresh fresh, Blackhole hole) {
+        for (TwentyFortyEight game : fresh.games) {
+            game.moveLeft();
+            hole.consume(game);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void moveRight(Fresh fresh, Blackhole hole) {
+        for (TwentyFortyEight game : fresh.games) {
+            game.moveRight();
+            hole.consume(game);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void moveUp(Fresh fresh, Blackhole hole) {
+        for (TwentyFortyEight game : fresh.games) {
+            game.moveUp();
+            hole.consume(game);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void moveDown(Fresh fresh, Blackhole hole) {
+        for (TwentyFortyEight game : fresh.games) {
+            game.moveDown();
+            hole.consume(game);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void generateNewTile(Fresh fresh, Blackhole hole) {
+        for (TwentyFortyEight game : fresh.games) {
+            game.generateNewTile();
+            hole.consume(game);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void undo(Moved moved, Blackhole hole) {
+        for (TwentyFortyEight game : moved.games) {
+            game.undo();
+            hole.consume(game);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void saveAndResume(Fresh fresh, Blackhole hole) throws IOException {
+        for (TwentyFortyEight game : fresh.games) {
+            game.saveBoard(file);
+            game.resumeBoard(file);
+            hole.consume(game);
+        }
+    }
+
+    @Benchmark
+    public int numEmptyTile() {
+        return readOnly.numEmptyTile();
+    }
+
+    @Benchmark
+    public boolean hasMergeableTiles() {
+        return readOnly.hasMergeableTiles();
+    }
+
+    @Benchmark
+    public boolean isGameOver() {
+        return readOnly.isGameOver();
+    }
+
+    @Benchmark
+    public int getHighestValue() {
+        return readOnly.getHighestValue();
+    }
+
+    @Benchmark
+    public long bitBoardMoveLeft() {
+        return BitBoard.moveLeft(bits);
+    }
+
+    @Benchmark
+    public long bitBoardMoveUp() {
+        return BitBoard.moveUp(bits);
+    }
+}
@@ -0,0 +1,64 @@
+package org.cis120.twentyfortyeight.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.cis120.twentyfortyeight.Direction;
+import org.cis120.twentyfortyeight.GridBoard;
+import org.cis120.twentyfortyeight.TileSpawner;
+import org.cis120.twentyfortyeight.TwentyFortyEight;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Moves per second on boards of different sizes.
+ *
+ * Both benchmarks keep playing one game, cycling through the four directions and
+ * starting over when the game ends, so they measure boards as they look during play instead of a
+ * single fixed one. gridMove is the GridBoard kernel with a spawn after each move; gameMove is the
+ * whole TwentyFortyEight move, which also records the slides and the undo history. At size 4 the
+ * game runs on the BitBoard engine, which gives a baseline for the GridBoard numbers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class GridBenchmark {
+
+    @Param({"4", "8", "16"})
+    public int size;
+
+    private GridBoard grid;
+    private TileSpawner spawner;
+    private TwentyFortyEight game;
+    private int turn;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        grid = new GridBoard(size);
+        spawner = new TileSpawner(1);
+        grid.spawn(spawner);
+        grid.spawn(spawner);
+        game = new TwentyFortyEight(size, 1);
+    }
+
+    @Benchmark
+    public int gridMove() {
+        int score = grid.move(Direction.of(turn++ & 3), null);
+        if (grid.spawn(spawner) < 0 && grid.mergeablePairs() == 0) {
+            grid.clear();
+            grid.spawn(spawner);
+            grid.spawn(spawner);
+        }
+        return score;
+    }
+
+    @Benchmark
+    public TwentyFortyEight gameMove() {
+        game.move(Direction.of(turn++ & 3));
+        if (game.isGameOver()) {
+            game.reset();
+        }
+        return game;
+    }
+}
@@ -0,0 +1,50 @@
+package org.cis120.twentyfortyeight.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.cis120.twentyfortyeight.Direction;
+import org.cis120.twentyfortyeight.GameMetrics;
+import org.cis120.twentyfortyeight.TwentyFortyEight;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of GameMetrics on a move.
+ *
+ * The same game loop as GridBenchmark.gameMove runs with no metrics attached and with metrics
+ * attached; the difference between the two is what counting costs per move. No Flight Recorder
+ * recording is running, which is the normal case in production.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MetricsBenchmark {
+
+    @Param({"4", "8"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private TwentyFortyEight game;
+    private int turn;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        game = new TwentyFortyEight(size, 1);
+        if (metrics) {
+            game.setMetrics(new GameMetrics());
+        }
+    }
+
+    @Benchmark
+    public TwentyFortyEight gameMove() {
+        game.move(Direction.of(turn++ & 3));
+        if (game.isGameOver()) {
+            game.reset();
+        }
+        return game;
+    }
+}
@@ -0,0 +1,49 @@
+package org.cis120.twentyfortyeight.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors that start one thread per task, for code that blocks on a socket.
+ *
+ * On a JVM with virtual threads (Java 21 and later) every task gets a virtual thread, so blocked
+ * connections cost a small heap object instead of an OS thread. The sources do not need Java 21 to
+ * compile: the executor is looked up by reflection, and older JVMs get a cached pool of platform
+ * threads instead.
+ */
+public final class ConnectionThreads {
+
+    private ConnectionThreads() {
+    }
+
+    /**
+     * Creates an executor that runs each task on its own thread, virtual when possible.
+     * @return the executor
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Whether newPerTaskExecutor() gives virtual threads on this JVM
+     * @return true on Java 21 and later
+     */
+    public static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.cis120.twentyfortyeight.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.cis120.twentyfortyeight.Direction;
+
+/**
+ * Hosts many games at once behind a line-based TCP protocol.
+ *
+ * Every connection runs on its own thread from ConnectionThreads, a virtual thread when the JVM
+ * has them. A connection works on one session at a time; commands are one line each and get one
+ * line back, either "OK" with the results or "ERR" with a message:
+ *
+ *   NEW [size] [seed]   start a game and attach to it        OK id
+ *   ATTACH id           attach to an existing session         OK id
+ *   MOVE L|R|U|D        make a move                           OK score over
+ *   UNDO                undo the last move                    OK score
+ *   STATE               describe the game, see Session        OK size score high over won cells
+ *   SAVE                save the game on the server           OK
+ *   LOAD                load the game saved by SAVE           OK
+ *   CLOSE               end the session                       OK
+ *   STATS               sessions and heap in use              OK sessions bytes
+ *   QUIT                close the connection
+ *
+ * Sessions that are not used for the idle timeout are evicted by a background sweep.
+ *
+ * Usage: GameServer [--port P] [--idle-minutes M] [--stripes S] [--saves DIR]
+ */
+public class GameServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 2048;
+    public static final long DEFAULT_IDLE_MINUTES = 10;
+
+    private final SessionTable sessions;
+    private final Path saveDirectory;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = ConnectionThreads.newPerTaskExecutor();
+    private final ScheduledExecutorService sweeper;
+    private final Thread acceptor;
+
+    /**
+     * Starts a server.
+     * @param port TCP port, 0 for any free port
+     * @param sessions session table to serve
+     * @param saveDirectory where SAVE writes one file per session
+     * @throws IOException if the port cannot be bound
+     */
+    public GameServer(int port, SessionTable sessions, Path saveDirectory) throws IOException {
+        this.sessions = sessions;
+        this.saveDirectory = saveDirectory;
+        serverSocket = new ServerSocket(port, 1024);
+        sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> sessions.evictIdle(System.nanoTime()), 1, 1,
+                TimeUnit.SECONDS);
+        acceptor = new Thread(this::acceptLoop, "game-server-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Getter for the port the server listens on
+     * @return port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.out.println("Could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads commands from one connection until it closes or sends QUIT.
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            Writer out = new BufferedWriter(
+                    new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII));
+            StringBuilder reply = new StringBuilder(64);
+            Session session = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                if (words[0].equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+                reply.setLength(0);
+                try {
+                    session = execute(words, session, reply);
+                } catch (IOException | RuntimeException e) {
+                    reply.setLength(0);
+                    reply.append("ERR ").append(e.getMessage());
+                }
+                out.append(reply).append('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; its session stays until it is closed or evicted
+        }
+    }
+
+    /**
+     * Runs one command and writes its reply.
+     * @return the session the connection is attached to after the command
+     */
+    private Session execute(String[] words, Session session, StringBuilder reply)
+            throws IOException {
+        String command = words[0].toUpperCase();
+        switch (command) {
+            case "NEW": {
+                int size = words.length > 1 ? Integer.parseInt(words[1]) : 4;
+                long seed = words.length > 2 ? Long.parseLong(words[2]) : System.nanoTime();
+                Session created = sessions.create(size, seed);
+                reply.append("OK ").append(created.getId());
+                return created;
+            }
+            case "ATTACH": {
+                Session found = sessions.get(Long.parseLong(argument(words)));
+                if (found == null) {
+                    throw new IllegalArgumentException("No such session");
+                }
+                reply.append("OK ").append(found.getId());
+                return found;
+            }
+            case "STATS":
+                Runtime runtime = Runtime.getRuntime();
+                reply.append("OK ").append(sessions.size()).append(' ')
+                        .append(runtime.totalMemory() - runtime.freeMemory());
+                return session;
+            default:
+                break;
+        }
+        if (session == null || session.isClosed()) {
+            throw new IllegalStateException("No session, send NEW or ATTACH first");
+        }
+        session.touch(System.nanoTime());
+        switch (command) {
+            case "MOVE":
+                int score = session.move(direction(argument(words)));
+                reply.append("OK ").append(score).append(' ')
+                        .append(session.isGameOver() ? 1 : 0);
+                return session;
+            case "UNDO":
+                reply.append("OK ").append(session.undo());
+                return session;
+            case "STATE":
+                reply.append("OK ");
+                session.writeState(reply);
+                return session;
+            case "SAVE":
+                Files.createDirectories(saveDirectory);
+                session.save(savePath(session));
+                reply.append("OK");
+                return session;
+            case "LOAD":
+                if (!Files.exists(savePath(session))) {
+                    throw new IllegalArgumentException("Nothing saved for this session");
+                }
+                session.load(savePath(session));
+                reply.append("OK");
+                return session;
+            case "CLOSE":
+                sessions.remove(session.getId());
+                reply.append("OK");
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+    }
+
+    private Path savePath(Session session) {
+        return saveDirectory.resolve(session.getId() + ".sav");
+    }
+
+    private static String argument(String[] words) {
+        if (words.length < 2) {
+            throw new IllegalArgumentException(words[0] + " needs an argument");
+        }
+        return words[1];
+    }
+
+    private static Direction direction(String word) {
+        switch (Character.toUpperCase(word.charAt(0))) {
+            case 'L': return Direction.LEFT;
+            case 'R': return Direction.RIGHT;
+            case 'U': return Direction.UP;
+            case 'D': return Direction.DOWN;
+            default: throw new IllegalArgumentException("Unknown direction " + word);
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sweeper.shutdownNow();
+        connections.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        long idleMinutes = DEFAULT_IDLE_MINUTES;
+        int stripes = SessionTable.DEFAULT_STRIPES;
+        String saves = "files/sessions";
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--idle-minutes": idleMinutes = Long.parseLong(args[i + 1]); break;
+                case "--stripes": stripes = Integer.parseInt(args[i + 1]); break;
+                case "--saves": saves = args[i + 1]; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        SessionTable table = new SessionTable(stripes, TimeUnit.MINUTES.toNanos(idleMinutes));
+        GameServer server = new GameServer(port, table, Paths.get(saves));
+        System.out.println("Listening on port " + server.getPort() + " with "
+                + (ConnectionThreads.hasVirtualThreads() ? "virtual" : "platform")
+                + " threads per connection");
+    }
+}
@@ -0,0 +1,195 @@
+package org.cis120.twentyfortyeight.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for GameServer.
+ *
+ * First opens the given number of idle sessions over a single connection and reports the heap the
+ * server needs to hold them. Then every client opens its own connection, starts a game and sends
+ * MOVE commands one at a time, starting a new game whenever one ends. The time from sending a
+ * command to reading its reply is recorded for every move, and the run prints the throughput and
+ * the latency percentiles over all clients.
+ *
+ * Usage: LoadGenerator [--host H] [--port P] [--idle N] [--clients C] [--moves M] [--size S]
+ */
+public class LoadGenerator {
+
+    private static final String DIRECTIONS = "LRUD";
+
+    private final String host;
+    private final int port;
+
+    /**
+     * Sets up a load generator.
+     * @param host server host
+     * @param port server port
+     */
+    public LoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Opens idle sessions over one connection.
+     * @param count number of sessions to open
+     * @param size board size of the sessions
+     * @return the STATS reply of the server after opening them
+     * @throws IOException if the connection fails
+     */
+    public String openIdleSessions(int count, int size) throws IOException {
+        try (Connection connection = new Connection()) {
+            for (int i = 0; i < count; i++) {
+                connection.send("NEW " + size + " " + i);
+            }
+            return connection.send("STATS");
+        }
+    }
+
+    /**
+     * Runs clients that each make a number of moves, and blocks until all are done.
+     * @param clients number of concurrent clients
+     * @param moves moves per client
+     * @param size board size of the clients' games
+     * @return latency of every move in nanoseconds, sorted
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public long[] runClients(int clients, int moves, int size) throws InterruptedException {
+        long[] latencies = new long[clients * moves];
+        ExecutorService executor = ConnectionThreads.newPerTaskExecutor();
+        try {
+            Future<?>[] workers = new Future<?>[clients];
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                workers[c] = executor.submit(() -> {
+                    playClient(client, moves, size, latencies);
+                    return null;
+                });
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("A client failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Plays one client, writing its latencies to its own part of the shared array.
+     */
+    private void playClient(int client, int moves, int size, long[] latencies)
+            throws IOException {
+        SplittableRandom rng = new SplittableRandom(client);
+        try (Connection connection = new Connection()) {
+            connection.send("NEW " + size + " " + client);
+            for (int m = 0; m < moves; m++) {
+                long start = System.nanoTime();
+                String reply = connection.send("MOVE " + DIRECTIONS.charAt(rng.nextInt(4)));
+                latencies[client * moves + m] = System.nanoTime() - start;
+                if (reply.endsWith(" 1")) {
+                    connection.send("CLOSE");
+                    connection.send("NEW " + size + " " + rng.nextLong());
+                }
+            }
+            connection.send("CLOSE");
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * A connection to the server that sends one command and waits for its reply.
+     */
+    private class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        Connection() throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            out = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+        }
+
+        String send(String command) throws IOException {
+            out.write(command);
+            out.write('\n');
+            out.flush();
+            String reply = in.readLine();
+            if (reply == null || !reply.startsWith("OK")) {
+                throw new IOException("Server replied " + reply + " to " + command);
+            }
+            return reply;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT;
+        int idle = 100000;
+        int clients = 64;
+        int moves = 10000;
+        int size = 4;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--host": host = args[i + 1]; break;
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--idle": idle = Integer.parseInt(args[i + 1]); break;
+                case "--clients": clients = Integer.parseInt(args[i + 1]); break;
+                case "--moves": moves = Integer.parseInt(args[i + 1]); break;
+                case "--size": size = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        LoadGenerator generator = new LoadGenerator(host, port);
+        if (idle > 0) {
+            long start = System.nanoTime();
+            String[] stats = generator.openIdleSessions(idle, size).split(" ");
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Opened %d idle sessions in %.2f s; server holds %s "
+                    + "sessions in %.1f MB of heap", idle, seconds, stats[1],
+                    Long.parseLong(stats[2]) / 1e6));
+        }
+        long start = System.nanoTime();
+        long[] latencies = generator.runClients(clients, moves, size);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%d clients, %d moves in %.2f s: %.0f moves per second",
+                clients, latencies.length, seconds, latencies.length / seconds));
+        System.out.println(String.format("Move latency (us): p50 %.1f, p90 %.1f, p99 %.1f, "
+                        + "p99.9 %.1f, max %.1f", percentile(latencies, 50) / 1e3,
+                percentile(latencies, 90) / 1e3, percentile(latencies, 99) / 1e3,
+                percentile(latencies, 99.9) / 1e3, percentile(latencies, 100) / 1e3));
+    }
+}
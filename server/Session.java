@@ -0,0 +1,146 @@
+package org.cis120.twentyfortyeight.server;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.cis120.twentyfortyeight.Direction;
+import org.cis120.twentyfortyeight.SaveFile;
+import org.cis120.twentyfortyeight.TileSpawner;
+import org.cis120.twentyfortyeight.TwentyFortyEight;
+
+/**
+ * One game hosted by the server.
+ *
+ * A TwentyFortyEight instance shares no mutable state with any other, so each session only needs
+ * its own lock: every method that touches the game is synchronized on the session, and players of
+ * different sessions never wait for each other. A connection keeps the session it is attached to,
+ * so the session table is not looked up on every command.
+ */
+public class Session {
+
+    private final long id;
+    private final TwentyFortyEight game;
+    private volatile long lastAccess;
+    private volatile boolean closed;
+
+    /**
+     * Creates a session with a new game.
+     * @param id session id
+     * @param size number of cells in a row
+     * @param seed seed of the tile generator
+     * @param now current time from System.nanoTime()
+     */
+    public Session(long id, int size, long seed, long now) {
+        this.id = id;
+        game = new TwentyFortyEight(size, new TileSpawner(seed));
+        lastAccess = now;
+    }
+
+    /**
+     * Getter for the session id
+     * @return id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Getter for the time the session was last used
+     * @return a System.nanoTime() value
+     */
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Records that the session was used.
+     * @param now current time from System.nanoTime()
+     */
+    public void touch(long now) {
+        lastAccess = now;
+    }
+
+    /**
+     * Whether the session was closed or evicted, after which it can no longer be used
+     * @return closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Marks the session as closed, called when it leaves the session table.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Makes a move.
+     * @param direction where the tiles go
+     * @return the score after the move
+     */
+    public synchronized int move(Direction direction) {
+        game.move(direction);
+        return game.getCurrScore();
+    }
+
+    /**
+     * Undoes the last move.
+     * @return the score after the undo
+     */
+    public synchronized int undo() {
+        game.undo();
+        return game.getCurrScore();
+    }
+
+    /**
+     * Whether the game is over
+     * @return true if no move is left
+     */
+    public synchronized boolean isGameOver() {
+        return game.isGameOver();
+    }
+
+    /**
+     * Saves the game to slot 0 of a save file.
+     * @param path save file, see SaveFile
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save(Path path) throws IOException {
+        try (SaveFile file = SaveFile.open(path)) {
+            file.write(0, game);
+        }
+    }
+
+    /**
+     * Replaces the game with the one in slot 0 of a save file.
+     * @param path save file, see SaveFile
+     * @throws IOException if the file cannot be read or the slot is corrupted
+     */
+    public synchronized void load(Path path) throws IOException {
+        try (SaveFile file = SaveFile.open(path)) {
+            file.read(0, game);
+        }
+    }
+
+    /**
+     * Writes the state of the game as one line: size, current score, high score, 1 if the game
+     * is over or 0, 1 if it is won or 0, and the exponent of every cell row after row as one
+     * base-32 digit each.
+     * @param out receives the line, without a line break
+     */
+    public synchronized void writeState(StringBuilder out) {
+        int size = game.getSize();
+        out.append(size).append(' ')
+                .append(game.getCurrScore()).append(' ')
+                .append(game.getHighestScore()).append(' ')
+                .append(game.isGameOver() ? 1 : 0).append(' ')
+                .append(game.hasWon() ? 1 : 0).append(' ');
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                out.append(Character.forDigit(game.getExponent(row, col), 32));
+            }
+        }
+    }
+}
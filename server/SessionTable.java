@@ -0,0 +1,144 @@
+package org.cis120.twentyfortyeight.server;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The sessions of a server, by id.
+ *
+ * The table is split into stripes, each a plain HashMap with its own lock, and a session lives in
+ * the stripe picked by a hash of its id. Creating, looking up or removing a session only locks one
+ * stripe, so connections working on different stripes never contend, and there is no lock over the
+ * whole table. Idle sessions are evicted by evictIdle(), which locks one stripe at a time.
+ *
+ * Ids are random positive longs. Saved games are named after them, so ids must not repeat after a
+ * restart, and a player should not be able to guess the id of someone else's session.
+ */
+public class SessionTable {
+
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final HashMap<Long, Session>[] stripes;
+    private final int mask;
+    private final long idleNanos;
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Creates an empty table.
+     * @param stripes number of stripes, rounded up to a power of two
+     * @param idleNanos how long a session may go unused before evictIdle() removes it
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionTable(int stripes, long idleNanos) {
+        if (stripes < 1 || idleNanos <= 0) {
+            throw new IllegalArgumentException("Need at least one stripe and a positive timeout");
+        }
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        this.stripes = new HashMap[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new HashMap<>();
+        }
+        mask = n - 1;
+        this.idleNanos = idleNanos;
+    }
+
+    private HashMap<Long, Session> stripe(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h >>> 32) & mask];
+    }
+
+    /**
+     * Creates a session with a new game and adds it to the table.
+     * @param size number of cells in a row
+     * @param seed seed of the tile generator
+     * @return the new session
+     */
+    public Session create(int size, long seed) {
+        while (true) {
+            long id = random.nextLong() >>> 1;
+            HashMap<Long, Session> stripe = stripe(id);
+            synchronized (stripe) {
+                if (!stripe.containsKey(id)) {
+                    Session session = new Session(id, size, seed, System.nanoTime());
+                    stripe.put(id, session);
+                    count.incrementAndGet();
+                    return session;
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up a session and records that it was used.
+     * @param id session id
+     * @return the session, or null if there is none with this id
+     */
+    public Session get(long id) {
+        HashMap<Long, Session> stripe = stripe(id);
+        Session session;
+        synchronized (stripe) {
+            session = stripe.get(id);
+        }
+        if (session != null) {
+            session.touch(System.nanoTime());
+        }
+        return session;
+    }
+
+    /**
+     * Removes a session and closes it.
+     * @param id session id
+     * @return true if the session was in the table
+     */
+    public boolean remove(long id) {
+        HashMap<Long, Session> stripe = stripe(id);
+        Session session;
+        synchronized (stripe) {
+            session = stripe.remove(id);
+        }
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        count.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Getter for the number of sessions in the table
+     * @return size
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Removes and closes every session that has not been used for longer than the idle timeout.
+     * @param now current time from System.nanoTime()
+     * @return number of sessions removed
+     */
+    public int evictIdle(long now) {
+        int evicted = 0;
+        for (HashMap<Long, Session> stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Session> it = stripe.values().iterator();
+                while (it.hasNext()) {
+                    Session session = it.next();
+                    if (now - session.getLastAccess() > idleNanos) {
+                        it.remove();
+                        session.close();
+                        evicted++;
+                    }
+                }
+            }
+        }
+        count.addAndGet(-evicted);
+        return evicted;
+    }
+}
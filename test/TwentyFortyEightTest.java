@@ -0,0 +1,129 @@
+package org.cis120.twentyfortyeight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+public class TwentyFortyEightTest {
+
+    /**
+     * Plays moves in turn until the game is over.
+     */
+    private static void playToEnd(TwentyFortyEight game) {
+        for (int i = 0; !game.isGameOver(); i++) {
+            game.move(Direction.of(i & 3));
+        }
+    }
+
+    @Test
+    public void testMoveCountCountsMovesThatChangeTheBoard() {
+        TwentyFortyEight game = new TwentyFortyEight(4, 1L);
+        int moves = 0;
+        for (int i = 0; i < 40 && !game.isGameOver(); i++) {
+            long before = game.getBits();
+            game.move(Direction.of(i & 3));
+            if (game.getBits() != before) {
+                moves++;
+            }
+        }
+        assertEquals(moves, game.getMoveCount());
+        game.undo();
+        assertEquals(moves - 1, game.getMoveCount());
+    }
+
+    @Test
+    public void testUndoAcrossResetRestoresMoveCount() {
+        TwentyFortyEight game = new TwentyFortyEight(4, 2L);
+        playToEnd(game);
+        int finished = game.getMoveCount();
+        game.reset();
+        assertEquals(0, game.getMoveCount());
+        game.undo();
+        assertEquals(finished, game.getMoveCount());
+        game.undo();
+        assertEquals(finished - 1, game.getMoveCount());
+    }
+
+    @Test
+    public void testUndoAcrossResetWithUnlimitedHistory() {
+        TwentyFortyEight game = new TwentyFortyEight(4, 3L);
+        game.setUndoDepth(UndoHistory.UNLIMITED);
+        playToEnd(game);
+        int finished = game.getMoveCount();
+        game.reset();
+        game.undo();
+        game.undo();
+        assertEquals(finished - 1, game.getMoveCount());
+    }
+
+    @Test
+    public void testUndoAcrossResetOnLargerBoard() {
+        TwentyFortyEight game = new TwentyFortyEight(5, 4L);
+        for (int i = 0; i < 30; i++) {
+            game.move(Direction.of(i & 3));
+        }
+        int moves = game.getMoveCount();
+        game.reset();
+        game.undo();
+        game.undo();
+        assertEquals(moves - 1, game.getMoveCount());
+    }
+
+    @Test
+    public void testUndoAfterResumeRestoresMoveCount() throws IOException {
+        File file = File.createTempFile("tfe-test", ".sav");
+        file.deleteOnExit();
+        TwentyFortyEight game = new TwentyFortyEight(4, 5L);
+        for (int i = 0; i < 30; i++) {
+            game.move(Direction.of(i & 3));
+        }
+        int moves = game.getMoveCount();
+        game.saveBoard(file.getPath());
+        TwentyFortyEight resumed = new TwentyFortyEight(4, 6L);
+        resumed.resumeBoard(file.getPath());
+        assertEquals(moves, resumed.getMoveCount());
+        resumed.undo();
+        assertEquals(moves - 1, resumed.getMoveCount());
+    }
+
+    @Test
+    public void testResetRecordsUnfinishedGameOnce() throws IOException {
+        Path dir = Files.createTempDirectory("tfe-test");
+        Leaderboard leaderboard = Leaderboard.open(dir.resolve("leaderboard.dat"));
+        TwentyFortyEight game = new TwentyFortyEight(4, 7L);
+        game.setLeaderboard(leaderboard);
+        for (int i = 0; i < 20; i++) {
+            game.move(Direction.of(i & 3));
+        }
+        int moves = game.getMoveCount();
+        game.reset();
+        assertEquals(1, leaderboard.getGameCount());
+        assertEquals(moves, leaderboard.top(1).get(0).getMoves());
+
+        // Going back into the recorded game and finishing it does not record it again
+        game.undo();
+        playToEnd(game);
+        game.reset();
+        assertEquals(1, leaderboard.getGameCount());
+        leaderboard.close();
+    }
+
+    @Test
+    public void testFinishedGameIsRecordedOnce() throws IOException {
+        Path dir = Files.createTempDirectory("tfe-test");
+        Leaderboard leaderboard = Leaderboard.open(dir.resolve("leaderboard.dat"));
+        TwentyFortyEight game = new TwentyFortyEight(4, 8L);
+        game.setLeaderboard(leaderboard);
+        playToEnd(game);
+        assertEquals(1, leaderboard.getGameCount());
+        assertEquals(game.getMoveCount(), leaderboard.top(1).get(0).getMoves());
+        game.reset();
+        assertEquals(1, leaderboard.getGameCount());
+        leaderboard.close();
+    }
+}
@@ -0,0 +1,80 @@
+package org.cis120.twentyfortyeight.vector;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import org.cis120.twentyfortyeight.BitBoard;
+import org.cis120.twentyfortyeight.ai.BatchScorer;
+
+/**
+ * Scores boards with the incubating vector API, as many boards per step as the CPU has long
+ * lanes. The boards of a step are transposed together, their 16-bit lines are shifted out lane by
+ * lane, and the table entries of all lanes are gathered in one operation per line.
+ *
+ * Needs --add-modules jdk.incubator.vector to compile and to run. Evaluator loads this class
+ * when it can and falls back to a scalar loop otherwise, so nothing else refers to it.
+ */
+public class VectorScorer implements BatchScorer {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.length() * 32));
+    private static final VectorSpecies<Float> FLOATS =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(LONGS.length() * 32));
+
+    @Override
+    public void score(float[] inner, float[] edge, long[] boards, int count, float[] out) {
+        int lanes = LONGS.length();
+        int[] lines = new int[lanes];
+        int i = 0;
+        for (; i <= count - lanes; i += lanes) {
+            LongVector board = LongVector.fromArray(LONGS, boards, i);
+            LongVector transposed = transpose(board);
+            FloatVector sum = line(edge, board, 0, lines);
+            sum = sum.add(line(inner, board, 16, lines));
+            sum = sum.add(line(inner, board, 32, lines));
+            sum = sum.add(line(edge, board, 48, lines));
+            sum = sum.add(line(edge, transposed, 0, lines));
+            sum = sum.add(line(inner, transposed, 16, lines));
+            sum = sum.add(line(inner, transposed, 32, lines));
+            sum = sum.add(line(edge, transposed, 48, lines));
+            sum.intoArray(out, i);
+        }
+        for (; i < count; i++) {
+            long board = boards[i];
+            long transposed = BitBoard.transpose(board);
+            out[i] = edge[(int) (board & 0xFFFF)] + inner[(int) (board >>> 16 & 0xFFFF)]
+                    + inner[(int) (board >>> 32 & 0xFFFF)] + edge[(int) (board >>> 48)]
+                    + edge[(int) (transposed & 0xFFFF)]
+                    + inner[(int) (transposed >>> 16 & 0xFFFF)]
+                    + inner[(int) (transposed >>> 32 & 0xFFFF)]
+                    + edge[(int) (transposed >>> 48)];
+        }
+    }
+
+    /**
+     * Gathers the table entry of one line of every lane.
+     */
+    private static FloatVector line(float[] table, LongVector board, int shift, int[] lines) {
+        IntVector index = (IntVector) board.lanewise(VectorOperators.LSHR, shift).and(0xFFFFL)
+                .convertShape(VectorOperators.L2I, INTS, 0);
+        index.intoArray(lines, 0);
+        return FloatVector.fromArray(FLOATS, table, 0, lines, 0);
+    }
+
+    /**
+     * BitBoard.transpose() on every lane.
+     */
+    private static LongVector transpose(LongVector board) {
+        LongVector a = board.and(0xF0F00F0FF0F00F0FL)
+                .or(board.and(0x0000F0F00000F0F0L).lanewise(VectorOperators.LSHL, 12))
+                .or(board.and(0x0F0F00000F0F0000L).lanewise(VectorOperators.LSHR, 12));
+        return a.and(0xFF00FF0000FF00FFL)
+                .or(a.and(0x00FF00FF00000000L).lanewise(VectorOperators.LSHR, 24))
+                .or(a.and(0x00000000FF00FF00L).lanewise(VectorOperators.LSHL, 24));
+    }
+}